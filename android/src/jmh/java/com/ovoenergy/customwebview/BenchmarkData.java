@@ -0,0 +1,118 @@
+package com.ovoenergy.customwebview;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic allowlists, blocklists and url corpora shaped like the ones seen in production:
+ * mostly https links with paths and query strings, a mix of listed and unlisted hosts, and a few
+ * non web links.
+ */
+final class BenchmarkData {
+
+    private static final String[] TLDS = {"com", "co.uk", "net", "org", "io"};
+    private static final String[] PATHS = {
+            "/",
+            "/account/statements",
+            "/checkout/basket?step=2&session=8f14e45fceea167a5a36dedd4bea2543",
+            "/help/articles/1234-how-do-i-read-my-meter#section-3",
+            "/oauth2/authorize?client_id=abc&redirect_uri=https%3A%2F%2Fapp.example.com%2Fcallback&state=xyz",
+            "/static/js/main.3f9a1c2b.chunk.js",
+    };
+    private static final String[] OTHER_LINKS = {
+            "tel:08001234567",
+            "mailto:support@example.com?subject=Hello",
+            "intent://scan/#Intent;scheme=zxing;package=com.google.zxing.client.android;end",
+    };
+
+    private BenchmarkData() {
+    }
+
+    static String host(int index) {
+        return "partner" + index + ".example-" + (index % 97) + "." + TLDS[index % TLDS.length];
+    }
+
+    /**
+     * Exact hosts, with every fourth entry a wildcard
+     */
+    static List<Object> allowlist(int size) {
+        List<Object> hosts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hosts.add(i % 4 == 0 ? "*." + host(i) : host(i));
+        }
+        return hosts;
+    }
+
+    static List<Object> routingRules(int size) {
+        List<Object> rules = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> rule = new HashMap<>();
+            if (i % 3 == 0) {
+                rule.put("pattern", "https://" + host(i) + "/checkout/*");
+                rule.put("action", "internal");
+            } else if (i % 3 == 1) {
+                rule.put("pattern", "https://*." + host(i) + "/*");
+                rule.put("action", "customTab");
+            } else {
+                rule.put("pattern", "https://" + host(i) + "/help/*");
+                rule.put("action", "external");
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /**
+     * @param count must be a power of two
+     */
+    static String[] navigationUrls(int allowlistSize, int count) {
+        Random random = new Random(42);
+        String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            String path = PATHS[random.nextInt(PATHS.length)];
+            if (kind < 5) {
+                // Listed host, or a subdomain of a wildcard entry
+                int index = random.nextInt(allowlistSize);
+                urls[i] = "https://" + (index % 4 == 0 ? "www." : "") + host(index) + path;
+            } else if (kind < 9) {
+                // Sessions keep coming back to the same handful of third party hosts
+                urls[i] = "https://www.unlisted-" + random.nextInt(40) + ".com" + path;
+            } else {
+                urls[i] = OTHER_LINKS[random.nextInt(OTHER_LINKS.length)];
+            }
+        }
+        return urls;
+    }
+
+    static List<Object> blocklist(int size) {
+        List<Object> hosts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hosts.add("tracker" + i + ".ads-" + (i % 53) + "." + TLDS[i % TLDS.length]);
+        }
+        return hosts;
+    }
+
+    /**
+     * Roughly one in five requests goes to a blocked host, the rest are first party assets
+     *
+     * @param count must be a power of two
+     */
+    static String[] subresourceUrls(int blocklistSize, int count) {
+        Random random = new Random(7);
+        String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            String path = PATHS[random.nextInt(PATHS.length)];
+            if (random.nextInt(5) == 0) {
+                int index = random.nextInt(blocklistSize);
+                urls[i] = "https://cdn.tracker" + index + ".ads-" + (index % 53) + "." + TLDS[index % TLDS.length] + path;
+            } else {
+                urls[i] = "https://static" + random.nextInt(20) + ".example.com" + path;
+            }
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,52 @@
+package com.ovoenergy.customwebview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the blockedHosts check done for every request in
+ * FilteringReactWebViewClient.shouldInterceptRequest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilteringBenchmark {
+
+    @Param({"1000", "100000"})
+    public int blocklistSize;
+
+    private FilteringHelper filteringHelper;
+    private UrlScanner urlScanner;
+    private String[] urls;
+    private int next;
+
+    @Setup
+    public void setup() {
+        filteringHelper = new FilteringHelper(null);
+        filteringHelper.setBlockedHosts(BenchmarkData.blocklist(blocklistSize));
+        urlScanner = new UrlScanner();
+        urls = BenchmarkData.subresourceUrls(blocklistSize, 1024);
+    }
+
+    @Benchmark
+    public boolean shouldBlock() {
+        String url = urls[next];
+        next = (next + 1) & (urls.length - 1);
+        urlScanner.scan(url);
+        return filteringHelper.shouldBlock(urlScanner);
+    }
+}
@@ -0,0 +1,78 @@
+package com.ovoenergy.customwebview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the navigation routing done in FilteringReactWebViewClient.shouldOverrideUrlLoading.
+ * Run with `gradle jmh`, which also reports allocation rates through the gc profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({"10", "500", "5000"})
+    public int allowlistSize;
+
+    @Param({"0", "50"})
+    public int routingRuleCount;
+
+    private FilteringHelper filteringHelper;
+    private RouteCache routeCache;
+    private UrlScanner urlScanner;
+    private String[] urls;
+    private int next;
+
+    @Setup
+    public void setup() {
+        filteringHelper = new FilteringHelper(BenchmarkData.allowlist(allowlistSize));
+        filteringHelper.setRoutingRules(BenchmarkData.routingRules(routingRuleCount));
+        routeCache = new RouteCache();
+        urlScanner = new UrlScanner();
+        urls = BenchmarkData.navigationUrls(allowlistSize, 1024);
+    }
+
+    private String nextUrl() {
+        String url = urls[next];
+        next = (next + 1) & (urls.length - 1);
+        return url;
+    }
+
+    @Benchmark
+    public boolean shouldOpenInternally() {
+        return filteringHelper.shouldOpenInternally(nextUrl());
+    }
+
+    @Benchmark
+    public boolean scanAndMatchHost() {
+        urlScanner.scan(nextUrl());
+        return filteringHelper.shouldOpenInternally(urlScanner);
+    }
+
+    @Benchmark
+    public NavigationRoute route() {
+        urlScanner.scan(nextUrl());
+        return filteringHelper.route(urlScanner);
+    }
+
+    @Benchmark
+    public NavigationRoute routeThroughCache() {
+        urlScanner.scan(nextUrl());
+        return routeCache.route(filteringHelper, urlScanner);
+    }
+}
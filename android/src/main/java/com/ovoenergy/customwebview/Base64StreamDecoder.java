@@ -0,0 +1,116 @@
+package com.ovoenergy.customwebview;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Incremental base64 decoder that writes straight to an OutputStream through a fixed-size buffer, so
+ * large payloads can be decoded piece by piece without holding them in memory.
+ *
+ * Accepts the standard and url-safe alphabets and ignores whitespace. Padding may appear at the end
+ * of any piece, so input encoded in separate chunks can be fed one chunk at a time.
+ */
+final class Base64StreamDecoder {
+
+    static final int BUFFER_SIZE = 48 * 1024;
+
+    private static final int[] VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = -1;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            VALUES[alphabet.charAt(i)] = i;
+        }
+        VALUES['-'] = 62;
+        VALUES['_'] = 63;
+    }
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int buffered;
+    // Bits of the current 4 character quantum
+    private int quantum;
+    private int quantumChars;
+    private long bytesWritten;
+
+    Base64StreamDecoder(OutputStream out) {
+        this.out = out;
+    }
+
+    void write(CharSequence input) throws IOException {
+        write(input, 0, input.length());
+    }
+
+    void write(CharSequence input, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '=') {
+                flushQuantum();
+                continue;
+            }
+            int value = c < 128 ? VALUES[c] : -1;
+            if (value < 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                throw new IOException("Invalid base64 character at " + i + ": " + c);
+            }
+
+            quantum = (quantum << 6) | value;
+            if (++quantumChars == 4) {
+                if (buffered + 3 > buffer.length) {
+                    flushBuffer();
+                }
+                buffer[buffered++] = (byte) (quantum >> 16);
+                buffer[buffered++] = (byte) (quantum >> 8);
+                buffer[buffered++] = (byte) quantum;
+                quantum = 0;
+                quantumChars = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes out any pending bytes. The decoder can keep being used afterwards.
+     */
+    void finish() throws IOException {
+        flushQuantum();
+        flushBuffer();
+        out.flush();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten + buffered;
+    }
+
+    // Emits the bytes of a quantum cut short by padding or by the end of the input
+    private void flushQuantum() throws IOException {
+        if (quantumChars == 0) {
+            return;
+        }
+        if (quantumChars == 1) {
+            throw new IOException("Truncated base64 input");
+        }
+        if (buffered + 2 > buffer.length) {
+            flushBuffer();
+        }
+        int bits = quantum << (6 * (4 - quantumChars));
+        buffer[buffered++] = (byte) (bits >> 16);
+        if (quantumChars == 3) {
+            buffer[buffered++] = (byte) (bits >> 8);
+        }
+        quantum = 0;
+        quantumChars = 0;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffered > 0) {
+            out.write(buffer, 0, buffered);
+            bytesWritten += buffered;
+            buffered = 0;
+        }
+    }
+}
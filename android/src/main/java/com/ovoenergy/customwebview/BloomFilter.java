@@ -0,0 +1,84 @@
+package com.ovoenergy.customwebview;
+
+/**
+ * Compact Bloom filter over ASCII case-insensitive strings. Membership tests hash a region of a
+ * String in place, so they do not allocate.
+ *
+ * False positives are possible at roughly the configured rate, false negatives are not.
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries       number of entries the filter is sized for
+     * @param falsePositiveRate     target false positive rate once it holds that many entries
+     */
+    BloomFilter(int expectedEntries, double falsePositiveRate) {
+        int entries = Math.max(1, expectedEntries);
+        // Optimal sizing: m = -n ln p / (ln 2)^2, k = m / n ln 2
+        long bitCount = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bitCount = Math.max(64, (bitCount + 63) / 64 * 64);
+        this.bits = new long[(int) (bitCount / 64)];
+        this.bitCount = bitCount;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / entries * Math.log(2)));
+    }
+
+    void put(String value) {
+        long hash1 = hash(value, 0, value.length());
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = indexOf(hash1 + i * hash2);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    boolean mightContain(String source, int start, int end) {
+        long hash1 = hash(source, start, end);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = indexOf(hash1 + i * hash2);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Size of the bit array in bytes
+     */
+    int getSizeInBytes() {
+        return bits.length * 8;
+    }
+
+    private long indexOf(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    // 64-bit FNV-1a over lower cased chars
+    private static long hash(String source, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            hash ^= c;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // Finalizer from MurmurHash3, spreads the bits for the second hash
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash | 1;
+    }
+}
@@ -0,0 +1,97 @@
+package com.ovoenergy.customwebview;
+
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.webkit.WebView;
+
+/**
+ * Reports changes of a WebView's width and content height, replacing the deprecated
+ * {@link WebView.PictureListener}.
+ *
+ * The size is checked before each frame is drawn, so at most once per frame, and only reported
+ * when it changed, throttled by {@link ContentSizeThrottle}. Only used from the UI thread.
+ */
+class ContentSizeObserver implements ViewTreeObserver.OnPreDrawListener, View.OnAttachStateChangeListener {
+
+    interface Listener {
+        void onContentSizeChange(int width, int height);
+    }
+
+    private final WebView webView;
+    private final Listener listener;
+    private final ContentSizeThrottle throttle = new ContentSizeThrottle(0);
+    private final Runnable checkRunnable = new Runnable() {
+        @Override
+        public void run() {
+            checkScheduled = false;
+            check();
+        }
+    };
+    private boolean enabled;
+    private boolean checkScheduled;
+
+    ContentSizeObserver(WebView webView, Listener listener) {
+        this.webView = webView;
+        this.listener = listener;
+    }
+
+    void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) {
+            return;
+        }
+
+        this.enabled = enabled;
+        if (enabled) {
+            webView.addOnAttachStateChangeListener(this);
+            if (webView.getWindowToken() != null) {
+                webView.getViewTreeObserver().addOnPreDrawListener(this);
+            }
+        } else {
+            webView.removeOnAttachStateChangeListener(this);
+            webView.getViewTreeObserver().removeOnPreDrawListener(this);
+            webView.removeCallbacks(checkRunnable);
+            checkScheduled = false;
+            throttle.reset();
+        }
+    }
+
+    /**
+     * Minimum time between two reports, 0 for at most one per frame.
+     */
+    void setInterval(long intervalMs) {
+        throttle.setInterval(intervalMs);
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        check();
+        return true;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View view) {
+        view.getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View view) {
+        // Each window has its own observer, pooled views move between them
+        view.getViewTreeObserver().removeOnPreDrawListener(this);
+    }
+
+    private void check() {
+        if (!enabled || checkScheduled) {
+            return;
+        }
+
+        long result = throttle.update(webView.getWidth(), webView.getContentHeight(), SystemClock.uptimeMillis());
+        if (result == ContentSizeThrottle.REPORT) {
+            listener.onContentSizeChange(webView.getWidth(), webView.getContentHeight());
+        } else if (result > 0) {
+            // The page may not draw again, check once the interval is over
+            checkScheduled = true;
+            webView.postDelayed(checkRunnable, result);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ovoenergy.customwebview;
+
+/**
+ * Decides when a content size change is reported, see {@link ContentSizeObserver}.
+ *
+ * A size is only reported when it differs from the last one reported, and no sooner than the
+ * interval after it. A size that arrives too early is not lost: the caller is told how long to wait
+ * before checking again. Not thread-safe.
+ */
+final class ContentSizeThrottle {
+
+    // Returned by update
+    static final long REPORT = 0;
+    static final long UNCHANGED = -1;
+
+    private long intervalMs;
+    private int lastWidth = -1;
+    private int lastHeight = -1;
+    private long lastReportTime;
+    private boolean reported;
+
+    ContentSizeThrottle(long intervalMs) {
+        setInterval(intervalMs);
+    }
+
+    void setInterval(long intervalMs) {
+        this.intervalMs = Math.max(0, intervalMs);
+    }
+
+    /**
+     * @param now current time in ms
+     * @return {@link #REPORT} when the size has to be reported now, {@link #UNCHANGED} when there
+     * is nothing to report, otherwise the ms to wait before calling again
+     */
+    long update(int width, int height, long now) {
+        if (width == lastWidth && height == lastHeight) {
+            return UNCHANGED;
+        }
+        if (reported && intervalMs > 0) {
+            long wait = lastReportTime + intervalMs - now;
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        lastWidth = width;
+        lastHeight = height;
+        lastReportTime = now;
+        reported = true;
+        return REPORT;
+    }
+
+    /**
+     * The next size is reported even when it did not change.
+     */
+    void reset() {
+        lastWidth = -1;
+        lastHeight = -1;
+        reported = false;
+    }
+}
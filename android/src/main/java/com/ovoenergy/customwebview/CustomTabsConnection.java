@@ -0,0 +1,139 @@
+package com.ovoenergy.customwebview;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.customtabs.CustomTabsCallback;
+import android.support.customtabs.CustomTabsClient;
+import android.support.customtabs.CustomTabsService;
+import android.support.customtabs.CustomTabsServiceConnection;
+import android.support.customtabs.CustomTabsSession;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.common.ReactConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Persistent connection to the Custom Tabs provider, shared by every WebView in the app.
+ *
+ * Once connected the browser process is warmed up and a session is created, so tabs opened through
+ * {@link CustomTabsHelper#openTab} start faster and can use urls prefetched with
+ * {@link #mayLaunchUrl}. Only used from the UI thread.
+ */
+class CustomTabsConnection {
+
+    @Nullable
+    private static Context sBoundContext;
+    @Nullable
+    private static CustomTabsServiceConnection sConnection;
+    @Nullable
+    private static CustomTabsSession sSession;
+    // mayLaunchUrl calls made while the service was still connecting
+    @Nullable
+    private static Uri sPendingUrl;
+    @Nullable
+    private static List<Bundle> sPendingOtherUrls;
+
+    private CustomTabsConnection() {
+    }
+
+    /**
+     * Binds to the Custom Tabs provider if it is not already bound. Does nothing when there is no
+     * provider installed.
+     */
+    static void warmup(Context context) {
+        if (sConnection != null) {
+            return;
+        }
+
+        String packageName = CustomTabsHelper.getCachedPackageNameToUse(context);
+        if (packageName == null) {
+            return;
+        }
+
+        Context applicationContext = context.getApplicationContext();
+        CustomTabsServiceConnection connection = new CustomTabsServiceConnection() {
+            @Override
+            public void onCustomTabsServiceConnected(ComponentName name, CustomTabsClient client) {
+                if (sConnection != this) {
+                    return;
+                }
+                client.warmup(0);
+                sSession = client.newSession(new CustomTabsCallback());
+                if (sSession != null && sPendingUrl != null) {
+                    sSession.mayLaunchUrl(sPendingUrl, null, sPendingOtherUrls);
+                }
+                sPendingUrl = null;
+                sPendingOtherUrls = null;
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                if (sConnection == this) {
+                    // The browser was killed, bind again on next use
+                    disconnect();
+                }
+            }
+        };
+
+        if (CustomTabsClient.bindCustomTabsService(applicationContext, packageName, connection)) {
+            sBoundContext = applicationContext;
+            sConnection = connection;
+        } else {
+            FLog.w(ReactConstants.TAG, "Could not bind to custom tabs service in " + packageName);
+        }
+    }
+
+    /**
+     * Tells the browser that the user is likely to open {@code url} next, falling back to
+     * {@code otherUrls} in decreasing order of likelihood, so it can preconnect and prefetch them.
+     */
+    static void mayLaunchUrl(Context context, String url, @Nullable List<String> otherUrls) {
+        warmup(context);
+
+        List<Bundle> otherBundles = null;
+        if (otherUrls != null && !otherUrls.isEmpty()) {
+            otherBundles = new ArrayList<>(otherUrls.size());
+            for (String otherUrl : otherUrls) {
+                Bundle bundle = new Bundle();
+                bundle.putParcelable(CustomTabsService.KEY_URL, Uri.parse(otherUrl));
+                otherBundles.add(bundle);
+            }
+        }
+
+        if (sSession != null) {
+            sSession.mayLaunchUrl(Uri.parse(url), null, otherBundles);
+        } else if (sConnection != null) {
+            sPendingUrl = Uri.parse(url);
+            sPendingOtherUrls = otherBundles;
+        }
+    }
+
+    @Nullable
+    static CustomTabsSession getSession() {
+        return sSession;
+    }
+
+    /**
+     * Unbinds from the provider, e.g. when the provider package changed.
+     */
+    static void disconnect() {
+        if (sConnection != null && sBoundContext != null) {
+            try {
+                sBoundContext.unbindService(sConnection);
+            } catch (IllegalArgumentException e) {
+                // Already unbound by the system
+            }
+        }
+        sBoundContext = null;
+        sConnection = null;
+        sSession = null;
+        sPendingUrl = null;
+        sPendingOtherUrls = null;
+    }
+}
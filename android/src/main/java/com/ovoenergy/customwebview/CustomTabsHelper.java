@@ -1,6 +1,8 @@
 package com.ovoenergy.customwebview;
 
 
+import android.content.ActivityNotFoundException;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -9,9 +11,13 @@ import android.content.pm.ResolveInfo;
 import android.graphics.Color;
 import android.net.Uri;
 import android.support.customtabs.CustomTabsIntent;
+import android.support.customtabs.CustomTabsSession;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.facebook.common.logging.FLog;
+import com.facebook.react.common.ReactConstants;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,6 +30,15 @@ class CustomTabsHelper {
     private static final String STABLE_PACKAGE = "com.android.chrome";
     private static final String LOCAL_PACKAGE = "com.google.android.apps.chrome";
 
+    // Resolving the package takes several PackageManager round trips, so the result is kept until an
+    // app is installed, updated or removed
+    private static final Object sPackageNameLock = new Object();
+    private static boolean sPackageNameResolved = false;
+    @Nullable
+    private static String sPackageNameToUse;
+    @Nullable
+    private static BroadcastReceiver sPackageChangeReceiver;
+
     public void setToolbarColour(String toolbarColour) {
         this.toolbarColour = Color.parseColor(toolbarColour);
     }
@@ -41,6 +56,47 @@ class CustomTabsHelper {
         }
     }
 
+    @Nullable
+    static String getCachedPackageNameToUse(Context context) {
+        synchronized (sPackageNameLock) {
+            if (!sPackageNameResolved) {
+                registerPackageChangeReceiver(context.getApplicationContext());
+                sPackageNameToUse = getPackageNameToUse(context);
+                sPackageNameResolved = true;
+            }
+            return sPackageNameToUse;
+        }
+    }
+
+    static void invalidatePackageNameToUse() {
+        synchronized (sPackageNameLock) {
+            sPackageNameResolved = false;
+            sPackageNameToUse = null;
+        }
+    }
+
+    private static void registerPackageChangeReceiver(Context applicationContext) {
+        if (sPackageChangeReceiver != null) {
+            return;
+        }
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+
+        sPackageChangeReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidatePackageNameToUse();
+                CustomTabsConnection.disconnect();
+            }
+        };
+        applicationContext.registerReceiver(sPackageChangeReceiver, filter);
+    }
+
     private static String getPackageNameToUse(Context context) {
         String packageNameToUse = null;
 
@@ -108,8 +164,26 @@ class CustomTabsHelper {
         return false;
     }
 
-    public void openTab(Context context, String url, Intent fallbackIntent) {
-        CustomTabsIntent.Builder builder = new CustomTabsIntent.Builder();
+    /**
+     * Hands the url off to whichever activity handles it, used for non web links and as the
+     * custom tab fallback. The intent is only built here, when it is actually launched.
+     */
+    public static void openExternally(Context context, String url) {
+        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        try {
+            context.startActivity(intent);
+        } catch (ActivityNotFoundException e) {
+            FLog.w(ReactConstants.TAG, "activity not found to handle uri scheme for: " + url, e);
+        }
+    }
+
+    public void openTab(Context context, String url) {
+        // Use the pre-connected session when there is one, it can reuse prefetched pages
+        CustomTabsSession session = CustomTabsConnection.getSession();
+        CustomTabsIntent.Builder builder = session != null
+                ? new CustomTabsIntent.Builder(session)
+                : new CustomTabsIntent.Builder();
 
         // Chrome tab customisations
         if (toolbarColour != null) {
@@ -118,14 +192,16 @@ class CustomTabsHelper {
 
         CustomTabsIntent customTabsIntent = builder.build();
 
-        String packageName = getPackageNameToUse(context);
+        String packageName = getCachedPackageNameToUse(context);
 
         if (packageName == null) {
-            context.startActivity(fallbackIntent);
+            openExternally(context, url);
         } else {
             customTabsIntent.intent.setPackage(packageName);
             customTabsIntent.intent.setData(Uri.parse(url));
             context.startActivity(customTabsIntent.intent);
+            // Keep the browser warm for the next link
+            CustomTabsConnection.warmup(context);
         }
     }
 }
\ No newline at end of file
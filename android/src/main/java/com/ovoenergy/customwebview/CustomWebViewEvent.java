@@ -0,0 +1,92 @@
+package com.ovoenergy.customwebview;
+
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.UIManagerModule;
+import com.facebook.react.uimanager.events.Event;
+import com.facebook.react.uimanager.events.EventDispatcher;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Direct event carrying an arbitrary payload, for the events this view adds on top of the ones
+ * inherited from ReactWebViewManager. Every event name must also be exported from
+ * {@link CustomWebViewManager#getExportedCustomDirectEventTypeConstants()}.
+ */
+class CustomWebViewEvent extends Event<CustomWebViewEvent> {
+
+    // Saves a module lookup per event. The dispatcher is owned by UIManagerModule and refers to
+    // the context, so neither is held strongly here.
+    private static final Map<ReactContext, WeakReference<EventDispatcher>> sEventDispatchers = new WeakHashMap<>();
+
+    private final String eventName;
+    private final WritableMap eventData;
+    private final boolean coalescing;
+
+    /**
+     * @param coalescing whether a newer event of the same name for the same view may replace this
+     *                   one while it is still queued, for events that carry a full snapshot
+     */
+    CustomWebViewEvent(int viewId, String eventName, WritableMap eventData, boolean coalescing) {
+        super(viewId);
+        this.eventName = eventName;
+        this.eventData = eventData;
+        this.coalescing = coalescing;
+    }
+
+    @Override
+    public String getEventName() {
+        return eventName;
+    }
+
+    @Override
+    public boolean canCoalesce() {
+        return coalescing;
+    }
+
+    @Override
+    public short getCoalescingKey() {
+        return 0;
+    }
+
+    @Override
+    public void dispatch(RCTEventEmitter rctEventEmitter) {
+        rctEventEmitter.receiveEvent(getViewTag(), getEventName(), eventData);
+    }
+
+    /**
+     * Dispatches from any thread.
+     */
+    static void dispatch(ReactContext reactContext, Event<?> event) {
+        EventDispatcher eventDispatcher = getEventDispatcher(reactContext);
+        if (eventDispatcher != null) {
+            eventDispatcher.dispatchEvent(event);
+        }
+    }
+
+    @Nullable
+    private static EventDispatcher getEventDispatcher(ReactContext reactContext) {
+        synchronized (sEventDispatchers) {
+            WeakReference<EventDispatcher> cached = sEventDispatchers.get(reactContext);
+            EventDispatcher eventDispatcher = cached == null ? null : cached.get();
+            if (eventDispatcher != null) {
+                return eventDispatcher;
+            }
+        }
+
+        UIManagerModule uiManager = reactContext.getNativeModule(UIManagerModule.class);
+        if (uiManager == null) {
+            return null;
+        }
+        EventDispatcher eventDispatcher = uiManager.getEventDispatcher();
+        synchronized (sEventDispatchers) {
+            sEventDispatchers.put(reactContext, new WeakReference<>(eventDispatcher));
+        }
+        return eventDispatcher;
+    }
+}
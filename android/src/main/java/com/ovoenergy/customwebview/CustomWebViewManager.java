@@ -9,14 +9,15 @@
 
 package com.ovoenergy.customwebview;
 
-import android.content.ActivityNotFoundException;
-import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.Picture;
-import android.net.Uri;
+import android.graphics.Color;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
+import android.view.Choreographer;
 import android.view.WindowManager;
 import android.view.ViewGroup;
 import android.webkit.ConsoleMessage;
@@ -26,6 +27,8 @@ import android.webkit.GeolocationPermissions;
 import android.webkit.JavascriptInterface;
 import android.webkit.ValueCallback;
 import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
@@ -41,6 +44,7 @@ import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.common.MapBuilder;
 import com.facebook.react.common.ReactConstants;
@@ -48,25 +52,26 @@ import com.facebook.react.common.build.ReactBuildConfig;
 import com.facebook.react.module.annotations.ReactModule;
 import com.facebook.react.uimanager.SimpleViewManager;
 import com.facebook.react.uimanager.ThemedReactContext;
-import com.facebook.react.uimanager.UIManagerModule;
 import com.facebook.react.uimanager.annotations.ReactProp;
 import com.facebook.react.uimanager.events.ContentSizeChangeEvent;
 import com.facebook.react.uimanager.events.Event;
-import com.facebook.react.uimanager.events.EventDispatcher;
 import com.facebook.react.views.webview.WebViewConfig;
 import com.facebook.react.views.webview.events.TopLoadingErrorEvent;
 import com.facebook.react.views.webview.events.TopLoadingFinishEvent;
 import com.facebook.react.views.webview.events.TopLoadingStartEvent;
 import com.facebook.react.views.webview.events.TopMessageEvent;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages instances of {@link WebView}
@@ -75,11 +80,18 @@ import java.util.Map;
  *  - GO_BACK
  *  - GO_FORWARD
  *  - RELOAD
+ *  - MAY_LAUNCH_URL
+ *  - ACKNOWLEDGE_MESSAGES
+ *  - PREFETCH
  *
  * {@link WebView} instances could emit following direct events:
  *  - topLoadingFinish
  *  - topLoadingStart
  *  - topLoadingError
+ *  - topDownloadProgress
+ *  - topDownloadComplete
+ *  - topMessageBatch
+ *  - topPerformanceReport
  *
  * Each event will carry the following properties:
  *  - target - view's react tag
@@ -88,6 +100,11 @@ import java.util.Map;
  *  - title - title of the current page
  *  - canGoBack - boolean, whether there is anything on a history stack to go back
  *  - canGoForward - boolean, whether it is possible to request GO_FORWARD command
+ *  - blockedRequestCount - topLoadingFinish only, requests blocked by blockedHosts on this page
+ *  - responseCacheHits, responseCacheMisses - topLoadingFinish only, requests matching
+ *    cachedResources on this page
+ *
+ * With leanNavigationEvents, title, canGoBack and canGoForward are left out.
 
 /**
  * This is a copy of ReactWebViewManager, with customisations.
@@ -105,8 +122,16 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
     private static final String HTML_ENCODING = "UTF-8";
     private static final String HTML_MIME_TYPE = "text/html; charset=utf-8";
     private static final String BRIDGE_NAME = "__REACT_WEB_VIEW_BRIDGE";
+    // Set on the window by the document start script once it ran in that document
+    private static final String DOCUMENT_START_FLAG = "__REACT_WEB_VIEW_DOCUMENT_START";
 
     private static final String HTTP_METHOD_POST = "POST";
+    private static final byte[] EMPTY_RESPONSE = new byte[0];
+    private static final String FILE_SCHEME = "file://";
+    // Virtual origin of bundle sources without one, .local names are never resolved through DNS
+    private static final String DEFAULT_BUNDLE_ORIGIN = "https://bundle.local";
+    // Private copies of the bundles, in the cache directory
+    private static final String BUNDLE_COPY_DIRECTORY = "webview-bundles";
 
     public static final int COMMAND_GO_BACK = 1;
     public static final int COMMAND_GO_FORWARD = 2;
@@ -116,6 +141,11 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
     public static final int COMMAND_INJECT_JAVASCRIPT = 6;
     public static final int COMMAND_SET_SOFT_INPUT_MODE = 7;
     public static final int COMMAND_RESTORE_SOFT_INPUT_MODE = 8;
+    public static final int COMMAND_MAY_LAUNCH_URL = 9;
+    public static final int COMMAND_ACKNOWLEDGE_MESSAGES = 10;
+    public static final int COMMAND_PREFETCH = 11;
+
+    static final String EVENT_MESSAGE_BATCH = "topMessageBatch";
 
     private
     @Nullable
@@ -123,16 +153,15 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
 
     // Use `webView.loadUrl("about:blank")` to reliably reset the view
     // state and release page resources (including any running JavaScript).
-    private static final String BLANK_URL = "about:blank";
+    static final String BLANK_URL = "about:blank";
 
     private WebViewConfig mWebViewConfig;
-    private
-    @Nullable
-    WebView.PictureListener mPictureListener;
 
     //@MARK Modification
     private FilteringHelper filteringHelper = new FilteringHelper(Collections.emptyList());
     private CustomTabsHelper customTabsHelper = new CustomTabsHelper();
+    @Nullable
+    private WebViewPool webViewPool;
 
     protected static class FilteringReactWebViewClient extends WebViewClient {
 
@@ -141,6 +170,25 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         //@MARK Modification
         private FilteringHelper filteringHelper;
         private CustomTabsHelper customTabsHelper;
+        // Reused for every navigation, WebViewClient callbacks all arrive on the UI thread
+        private final UrlScanner urlScanner = new UrlScanner();
+        private final RouteCache routeCache = new RouteCache();
+        // shouldInterceptRequest is called on the WebView's IO threads
+        private final ThreadLocal<UrlScanner> interceptUrlScanner = new ThreadLocal<UrlScanner>() {
+            @Override
+            protected UrlScanner initialValue() {
+                return new UrlScanner();
+            }
+        };
+        private final AtomicInteger blockedRequestCount = new AtomicInteger();
+        private final AtomicInteger responseCacheHits = new AtomicInteger();
+        private final AtomicInteger responseCacheMisses = new AtomicInteger();
+        // Url of the last topLoadingStart event, null once the navigation finished. Redirects and
+        // doUpdateVisitedHistory report the same url again.
+        @Nullable
+        private String lastStartUrl;
+        // Stands in for getProgress() in lean events
+        private boolean mLoading = false;
 
         public FilteringReactWebViewClient(FilteringHelper filteringHelper, CustomTabsHelper customTabsHelper) {
             this.filteringHelper = filteringHelper;
@@ -150,53 +198,128 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         @Override
         public void onPageFinished(WebView webView, String url) {
             super.onPageFinished(webView, url);
+            ((FilteringReactWebView) webView).getPerformanceReporter().onPageFinished(url, mLastLoadFailed);
+            lastStartUrl = null;
+            mLoading = false;
 
             if (!mLastLoadFailed) {
                 FilteringReactWebView filteringReactWebView = (FilteringReactWebView) webView;
+                filteringReactWebView.callDocumentStartJavaScript();
                 filteringReactWebView.callInjectedJavaScript();
                 filteringReactWebView.linkBridge();
                 emitFinishEvent(webView, url);
             }
+
+            if (ReactBuildConfig.DEBUG) {
+                FLog.d(ReactConstants.TAG, "Navigation " + routeCache);
+                if (!((FilteringReactWebView) webView).getResponseCacheRules().isEmpty()) {
+                    FLog.d(ReactConstants.TAG, "Sub-resources "
+                            + ResponseCacheInterceptor.getInstance(webView.getContext()).getCache());
+                }
+            }
         }
 
         @Override
         public void onPageStarted(WebView webView, String url, Bitmap favicon) {
             super.onPageStarted(webView, url, favicon);
+            ((FilteringReactWebView) webView).getPerformanceReporter().onPageStarted(url);
             mLastLoadFailed = false;
+            blockedRequestCount.set(0);
+            responseCacheHits.set(0);
+            responseCacheMisses.set(0);
+            mLoading = true;
+            ((FilteringReactWebView) webView).onPageStarted();
+            ((FilteringReactWebView) webView).callDocumentStartJavaScript();
+
+            emitStartEvent(webView, url);
+        }
 
-            dispatchEvent(
-                    webView,
-                    new TopLoadingStartEvent(
-                            webView.getId(),
-                            createWebViewEvent(webView, url)));
+        //@MARK Modification: the earliest point the new document is known to be in place
+        @Override
+        public void onPageCommitVisible(WebView webView, String url) {
+            super.onPageCommitVisible(webView, url);
+            ((FilteringReactWebView) webView).getPerformanceReporter().onPageCommitVisible();
+            ((FilteringReactWebView) webView).callDocumentStartJavaScript();
         }
 
         //@MARK Modified
         @Override
         public boolean shouldOverrideUrlLoading(WebView view, String url) {
+            if (((FilteringReactWebView) view).isOfflineBundleUrl(url)) {
+                return false;
+            }
 
-            // To be used for chromeCustomTab fallback or opening non web links
-            Intent fallbackIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-            fallbackIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            UrlScanner scannedUrl = urlScanner;
+            scannedUrl.scan(url);
 
-            // If weblink
-            if ((url.startsWith("http://") || url.startsWith("https://") ||
-                    url.startsWith("file://") || url.equals("about:blank"))) {
-                // If not in whitelist, open custom tab
-                if (!filteringHelper.shouldOpenInternally(url)) {
-                    customTabsHelper.openTab(view.getContext(), url, fallbackIntent);
+            switch (routeCache.route(filteringHelper, scannedUrl)) {
+                case INTERNAL:
+                    return false;
+                case CUSTOM_TAB:
+                    customTabsHelper.openTab(view.getContext(), url);
+                    return true;
+                default:
+                    CustomTabsHelper.openExternally(view.getContext(), url);
                     return true;
+            }
+        }
+
+        RouteCache getRouteCache() {
+            return routeCache;
+        }
+
+        //@MARK Modification
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+            WebResourceResponse bundled = ((FilteringReactWebView) view).serveFromOfflineBundle(url);
+            if (bundled != null) {
+                return bundled;
+            }
+            if (filteringHelper.isBlockingEnabled()) {
+                UrlScanner scannedUrl = interceptUrlScanner.get();
+                scannedUrl.scan(url);
+                if (filteringHelper.shouldBlock(scannedUrl)) {
+                    blockedRequestCount.incrementAndGet();
+                    return new WebResourceResponse("text/plain", HTML_ENCODING, new ByteArrayInputStream(EMPTY_RESPONSE));
                 }
+            }
+            return super.shouldInterceptRequest(view, url);
+        }
 
-                return false;
-            } else {
-                try {
-                    view.getContext().startActivity(fallbackIntent);
-                } catch (ActivityNotFoundException e) {
-                    FLog.w(ReactConstants.TAG, "activity not found to handle uri scheme for: " + url, e);
+        //@MARK Modification: prefetched urls, and sub-resources matching cachedResources, see
+        // ResponseCacheInterceptor
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            String url = request.getUrl().toString();
+            WebResourceResponse response = shouldInterceptRequest(view, url);
+            if (response != null || !"GET".equals(request.getMethod())) {
+                return response;
+            }
+
+            if (ResponseCacheInterceptor.isPrefetched(url)) {
+                ResponseCacheInterceptor interceptor = ResponseCacheInterceptor.getInstance(view.getContext());
+                response = request.isForMainFrame() ? interceptor.takePrefetched(url) : interceptor.getPrefetched(url);
+                if (response != null) {
+                    responseCacheHits.incrementAndGet();
+                    return response;
                 }
-                return true;
             }
+            if (request.isForMainFrame()) {
+                return null;
+            }
+
+            long ttlMs = ((FilteringReactWebView) view).getResponseCacheRules().getTtlMs(url);
+            if (ttlMs < 0) {
+                return null;
+            }
+            ResponseCacheInterceptor interceptor = ResponseCacheInterceptor.getInstance(view.getContext());
+            response = interceptor.getCached(url);
+            if (response != null) {
+                responseCacheHits.incrementAndGet();
+                return response;
+            }
+            responseCacheMisses.incrementAndGet();
+            return interceptor.fetch(url, request.getRequestHeaders(), ttlMs);
         }
 
         @Override
@@ -207,6 +330,8 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
                 String failingUrl) {
             super.onReceivedError(webView, errorCode, description, failingUrl);
             mLastLoadFailed = true;
+            lastStartUrl = null;
+            mLoading = false;
 
             // In case of an error JS side expect to get a finish event first, and then get an error event
             // Android WebView does it in the opposite way, so we need to simulate that behavior
@@ -225,6 +350,16 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         public void doUpdateVisitedHistory(WebView webView, String url, boolean isReload) {
             super.doUpdateVisitedHistory(webView, url, isReload);
 
+            emitStartEvent(webView, url);
+        }
+
+        //@MARK Modification
+        private void emitStartEvent(WebView webView, String url) {
+            if (url != null && url.equals(lastStartUrl)) {
+                return;
+            }
+            lastStartUrl = url;
+
             dispatchEvent(
                     webView,
                     new TopLoadingStartEvent(
@@ -233,11 +368,16 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         }
 
         private void emitFinishEvent(WebView webView, String url) {
+            WritableMap eventData = createWebViewEvent(webView, url);
+            eventData.putInt("blockedRequestCount", blockedRequestCount.get());
+            eventData.putInt("responseCacheHits", responseCacheHits.get());
+            eventData.putInt("responseCacheMisses", responseCacheMisses.get());
+
             dispatchEvent(
                     webView,
                     new TopLoadingFinishEvent(
                             webView.getId(),
-                            createWebViewEvent(webView, url)));
+                            eventData));
         }
 
         private WritableMap createWebViewEvent(WebView webView, String url) {
@@ -246,6 +386,11 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
             // Don't use webView.getUrl() here, the URL isn't updated to the new value yet in callbacks
             // like onPageFinished
             event.putString("url", url);
+            //@MARK Modification: lean events skip the WebView queries, see leanNavigationEvents
+            if (((FilteringReactWebView) webView).isLeanNavigationEvents()) {
+                event.putBoolean("loading", !mLastLoadFailed && mLoading);
+                return event;
+            }
             event.putBoolean("loading", !mLastLoadFailed && webView.getProgress() != 100);
             event.putString("title", webView.getTitle());
             event.putBoolean("canGoBack", webView.canGoBack());
@@ -259,11 +404,60 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
      * to call {@link WebView#destroy} on activty destroy event and also to clear the client
      */
     protected static class FilteringReactWebView extends WebView implements LifecycleEventListener {
-        private
+        //@MARK Modified: wrapped once when the prop is set, not on every page
+        @Nullable
+        private String injectedScript;
         @Nullable
-        String injectedJS;
+        private String documentStartScript;
 
         private boolean messagingEnabled = false;
+        private boolean leanNavigationEvents = false;
+        // Read on the WebView's IO threads
+        private volatile ResponseCacheRules responseCacheRules = ResponseCacheRules.EMPTY;
+        // Set together by a bundle source, see OfflineBundle. Read on the WebView's IO threads.
+        @Nullable
+        private volatile OfflineBundle offlineBundle;
+        @Nullable
+        private volatile String offlineBundleOrigin;
+
+        @Nullable
+        private WebDownloader webDownloader;
+
+        private final OutgoingMessageQueue outgoingMessages = new OutgoingMessageQueue(this);
+        // Set while the messagePort prop is on, on API 23+
+        @Nullable
+        private WebMessageTransport messageTransport;
+        private final PerformanceReporter performanceReporter = new PerformanceReporter(this);
+        private final ContentSizeObserver contentSizeObserver = new ContentSizeObserver(this,
+                new ContentSizeObserver.Listener() {
+                    @Override
+                    public void onContentSizeChange(int width, int height) {
+                        dispatchEvent(FilteringReactWebView.this,
+                                new ContentSizeChangeEvent(getId(), width, height));
+                    }
+                });
+        // Set while messageBatching is on. Written on the UI thread, read on the JavaBridge thread.
+        @Nullable
+        private volatile MessageBuffer messageBuffer;
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+        private final Choreographer.FrameCallback messageFlushCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                flushMessages();
+            }
+        };
+        private final Runnable messageFlushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                flushMessages();
+            }
+        };
+        private final Runnable scheduleMessageFlushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                scheduleMessageFlush();
+            }
+        };
 
         private class ReactWebViewBridge {
             FilteringReactWebView mContext;
@@ -304,7 +498,22 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         }
 
         public void setInjectedJavaScript(@Nullable String js) {
-            injectedJS = js;
+            injectedScript = TextUtils.isEmpty(js) ? null : "(function() {\n" + js + ";\n})();";
+        }
+
+        /**
+         * Sets a script to run as early as possible on each page. There is no document start hook,
+         * so it is sent when the navigation starts, again once the new document is visible, and
+         * again when it finished loading. A flag on the window makes it run only the first time
+         * per document. Best effort only, the page is parsed while these callbacks are posted and
+         * its own scripts may run first.
+         */
+        void setDocumentStartJavaScript(@Nullable String js) {
+            documentStartScript = TextUtils.isEmpty(js) ? null :
+                    "if (!window." + DOCUMENT_START_FLAG + ") {" +
+                    "window." + DOCUMENT_START_FLAG + " = true;" +
+                    "(function() {\n" + js + ";\n})();" +
+                    "}";
         }
 
         public void setMessagingEnabled(boolean enabled) {
@@ -322,15 +531,30 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         }
 
         public void callInjectedJavaScript() {
-            if (getSettings().getJavaScriptEnabled() &&
-                    injectedJS != null &&
-                    !TextUtils.isEmpty(injectedJS)) {
-                loadUrl("javascript:(function() {\n" + injectedJS + ";\n})();");
+            if (injectedScript != null && getSettings().getJavaScriptEnabled()) {
+                evaluateScript(injectedScript);
+            }
+        }
+
+        void callDocumentStartJavaScript() {
+            if (documentStartScript != null && getSettings().getJavaScriptEnabled()) {
+                evaluateScript(documentStartScript);
+            }
+        }
+
+        private void evaluateScript(String script) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                // Skips parsing the script as a url
+                evaluateJavascript(script, null);
+            } else {
+                loadUrl("javascript:" + script);
             }
         }
 
         public void linkBridge() {
-            if (messagingEnabled) {
+            if (messagingEnabled && messageTransport != null) {
+                messageTransport.link();
+            } else if (messagingEnabled) {
                 if (ReactBuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
                     // See isNative in lodash
                     String testPostMessageNative = "String(window.postMessage) === String(Object.hasOwnProperty).replace('hasOwnProperty', 'postMessage')";
@@ -354,13 +578,287 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         }
 
         public void onMessage(String message) {
-            dispatchEvent(this, new TopMessageEvent(this.getId(), message));
+            MessageBuffer buffer = messageBuffer;
+            if (buffer == null) {
+                dispatchEvent(this, new TopMessageEvent(this.getId(), message));
+                return;
+            }
+
+            switch (buffer.offer(message)) {
+                case SCHEDULE_FLUSH:
+                    mainHandler.post(scheduleMessageFlushRunnable);
+                    break;
+                case FLUSH_NOW:
+                    mainHandler.post(messageFlushRunnable);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Moves messages in both directions over a {@link WebMessageTransport} instead of the
+         * JavaBridge and scripts. Ignored below API 23, where messaging keeps using the bridge.
+         */
+        void setMessagePortEnabled(boolean enabled) {
+            if (enabled == (messageTransport != null) || !WebMessageTransport.isSupported()) {
+                return;
+            }
+            if (enabled) {
+                messageTransport = new WebMessageTransport(this, new WebMessageTransport.Receiver() {
+                    @Override
+                    public void onMessage(String message) {
+                        FilteringReactWebView.this.onMessage(message);
+                    }
+                });
+            } else {
+                messageTransport.close();
+                messageTransport = null;
+            }
+            // Takes effect on the current page right away
+            linkBridge();
+        }
+
+        /**
+         * Collects messages from the page into one topMessageBatch event per frame instead of a
+         * topMessage event each, see {@link MessageBuffer}.
+         */
+        void setMessageBatching(boolean enabled) {
+            if (enabled == (messageBuffer != null)) {
+                return;
+            }
+            if (enabled) {
+                messageBuffer = new MessageBuffer(MessageBuffer.DEFAULT_CAPACITY, MessageBuffer.DEFAULT_BATCH_SIZE,
+                        MessageBuffer.DEFAULT_ACK_TIMEOUT_MS);
+            } else {
+                MessageBuffer buffer = messageBuffer;
+                messageBuffer = null;
+                buffer.clear();
+                Choreographer.getInstance().removeFrameCallback(messageFlushCallback);
+            }
+        }
+
+        /**
+         * JS handled the last topMessageBatch event, the next one can be sent.
+         */
+        void acknowledgeMessages() {
+            MessageBuffer buffer = messageBuffer;
+            if (buffer != null) {
+                buffer.acknowledge();
+            }
+        }
+
+        private void scheduleMessageFlush() {
+            Choreographer choreographer = Choreographer.getInstance();
+            choreographer.removeFrameCallback(messageFlushCallback);
+            choreographer.postFrameCallback(messageFlushCallback);
+        }
+
+        private void flushMessages() {
+            MessageBuffer buffer = messageBuffer;
+            if (buffer == null) {
+                return;
+            }
+
+            MessageBuffer.Batch batch = buffer.drain(SystemClock.uptimeMillis());
+            if (batch != null) {
+                if (batch.dropped > 0) {
+                    FLog.w(ReactConstants.TAG, "Dropped " + batch.dropped + " messages from the page, JS is not keeping up");
+                }
+                WritableArray messages = Arguments.createArray();
+                for (String message : batch.messages) {
+                    messages.pushString(message);
+                }
+                WritableMap event = Arguments.createMap();
+                event.putArray("messages", messages);
+                event.putInt("dropped", batch.dropped);
+                dispatchEvent(this, new CustomWebViewEvent(getId(), EVENT_MESSAGE_BATCH, event, false));
+            }
+            if (buffer.rescheduleIfPending()) {
+                scheduleMessageFlush();
+            }
+        }
+
+        void postMessageToPage(String message) {
+            // Messages still waiting for a frame go first, so the order is kept
+            if (messageTransport != null && messageTransport.isLinked() && !outgoingMessages.hasPending()) {
+                messageTransport.post(message);
+            } else {
+                outgoingMessages.post(message);
+            }
+        }
+
+        /**
+         * Called when a new page starts loading, per-page messaging state starts over.
+         */
+        void onPageStarted() {
+            if (messageTransport != null) {
+                messageTransport.onPageStarted();
+            }
+        }
+
+        void setLeanNavigationEvents(boolean lean) {
+            leanNavigationEvents = lean;
+        }
+
+        boolean isLeanNavigationEvents() {
+            return leanNavigationEvents;
+        }
+
+        void setResponseCacheRules(ResponseCacheRules rules) {
+            responseCacheRules = rules;
+        }
+
+        ResponseCacheRules getResponseCacheRules() {
+            return responseCacheRules;
+        }
+
+        /**
+         * Serves every url under {@code origin} from the bundle, or stops when null.
+         */
+        void setOfflineBundle(@Nullable OfflineBundle bundle, @Nullable String origin) {
+            offlineBundle = bundle;
+            offlineBundleOrigin = origin;
+        }
+
+        boolean isOfflineBundleUrl(String url) {
+            String origin = offlineBundleOrigin;
+            if (origin == null || !url.startsWith(origin)) {
+                return false;
+            }
+            if (url.length() == origin.length()) {
+                return true;
+            }
+            char next = url.charAt(origin.length());
+            return next == '/' || next == '?' || next == '#';
         }
 
-        private void cleanupCallbacksAndDestroy() {
+        /**
+         * @return the bundle entry for the url, a 404 for missing entries, or null when the url is
+         * not under the bundle's origin
+         */
+        @Nullable
+        WebResourceResponse serveFromOfflineBundle(String url) {
+            OfflineBundle bundle = offlineBundle;
+            String origin = offlineBundleOrigin;
+            if (bundle == null || origin == null || !isOfflineBundleUrl(url)) {
+                return null;
+            }
+
+            OfflineBundle.Entry entry = bundle.find(url.substring(origin.length()));
+            if (entry != null) {
+                try {
+                    return new WebResourceResponse(entry.mimeType, entry.isText() ? HTML_ENCODING : null,
+                            bundle.open(entry));
+                } catch (IOException e) {
+                    FLog.w(ReactConstants.TAG, "Could not read " + url + " from the offline bundle", e);
+                }
+            }
+            // The origin is virtual, there is no point going to the network
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                return new WebResourceResponse("text/plain", HTML_ENCODING, 404, "Not Found", null,
+                        new ByteArrayInputStream(EMPTY_RESPONSE));
+            }
+            return new WebResourceResponse("text/plain", HTML_ENCODING, new ByteArrayInputStream(EMPTY_RESPONSE));
+        }
+
+        PerformanceReporter getPerformanceReporter() {
+            return performanceReporter;
+        }
+
+        ContentSizeObserver getContentSizeObserver() {
+            return contentSizeObserver;
+        }
+
+        void setWebDownloader(WebDownloader webDownloader) {
+            this.webDownloader = webDownloader;
+        }
+
+        @Nullable
+        WebDownloader getWebDownloader() {
+            return webDownloader;
+        }
+
+        void cleanupCallbacksAndDestroy() {
+            if (webDownloader != null) {
+                webDownloader.release();
+            }
+            outgoingMessages.clear();
+            if (messageTransport != null) {
+                messageTransport.close();
+            }
+            contentSizeObserver.setEnabled(false);
+            performanceReporter.setEnabled(false);
             setWebViewClient(null);
             destroy();
         }
+
+        /**
+         * Brings a dropped view back to the state createViewInstance left it in, so it can be
+         * mounted again, see {@link WebViewPool}. Everything set through props goes back to the
+         * WebView defaults, since props JS leaves out are not sent again on mount, and the
+         * settings are then configured again by {@code config}.
+         */
+        void resetForReuse(WebViewConfig config) {
+            stopLoading();
+            if (webDownloader != null) {
+                webDownloader.release();
+                webDownloader.setParallelConnections(0);
+            }
+            setWebViewClient(null);
+            contentSizeObserver.setEnabled(false);
+            performanceReporter.setEnabled(false);
+            contentSizeObserver.setInterval(0);
+            outgoingMessages.clear();
+            setInjectedJavaScript(null);
+            setDocumentStartJavaScript(null);
+            setMessagingEnabled(false);
+            setMessagePortEnabled(false);
+            setMessageBatching(false);
+            setLeanNavigationEvents(false);
+            setResponseCacheRules(ResponseCacheRules.EMPTY);
+            setOfflineBundle(null, null);
+            setId(NO_ID);
+
+            WebSettings settings = getSettings();
+            settings.setJavaScriptEnabled(false);
+            settings.setTextZoom(100);
+            settings.setUseWideViewPort(false);
+            settings.setDomStorageEnabled(true);
+            settings.setUserAgentString(null);
+            settings.setSaveFormData(true);
+            settings.setAllowUniversalAccessFromFileURLs(false);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                settings.setMediaPlaybackRequiresUserGesture(true);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                settings.setMixedContentMode(WebSettings.MIXED_CONTENT_NEVER_ALLOW);
+            }
+            // As in createWebView
+            config.configWebView(this);
+            settings.setDomStorageEnabled(true);
+
+            // Props applied by the base view manager, white is what a new WebView draws
+            setBackgroundColor(Color.WHITE);
+            setAlpha(1);
+            setTranslationX(0);
+            setTranslationY(0);
+            setScaleX(1);
+            setScaleY(1);
+            setRotation(0);
+            setRotationX(0);
+            setRotationY(0);
+            setLayerType(LAYER_TYPE_NONE, null);
+            setTag(null);
+            setContentDescription(null);
+            setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_AUTO);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                setElevation(0);
+                setTranslationZ(0);
+            }
+
+            loadUrl(BLANK_URL);
+        }
     }
 
     public CustomWebViewManager() {
@@ -379,10 +877,75 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         return REACT_CLASS;
     }
 
+    /**
+     * Timings of {@link #preloadWebView}, in milliseconds spent on the UI thread.
+     */
+    public interface PreloadListener {
+        void onWebViewPreloaded(long cookieManagerMs, long userAgentMs, long webViewMs);
+    }
+
+    /**
+     * Loads the WebView provider the first time the UI thread is idle, instead of when the first
+     * WebView mounts. Call as early as possible, e.g. from Application#onCreate. Runs once per process.
+     *
+     * @param listener notified on the UI thread with how long each step took, may be null
+     */
+    public static void preloadWebView(Context context, @Nullable PreloadListener listener) {
+        WebViewPreloader.preload(context, listener);
+    }
+
+    /**
+     * Limits the disk space used by the `cachedResources` response cache, 32MB by default. Takes
+     * effect if called before the first cached request, e.g. from Application#onCreate.
+     */
+    public static void setResponseCacheSize(long bytes) {
+        ResponseCacheInterceptor.setMaxBytes(bytes);
+    }
+
+    /**
+     * Keeps up to {@code size} configured WebViews ready, created while the UI thread is idle, and
+     * reuses dropped WebViews instead of destroying them. 0, the default, disables pooling.
+     */
+    public void setWebViewPoolSize(int size) {
+        if (webViewPool != null) {
+            webViewPool.detach();
+        }
+        webViewPool = size > 0 ? new WebViewPool(size, new WebViewPool.Factory() {
+            @Override
+            public FilteringReactWebView create(ThemedReactContext reactContext) {
+                return createWebView(reactContext);
+            }
+
+            @Override
+            public void reset(FilteringReactWebView webView) {
+                webView.resetForReuse(mWebViewConfig);
+            }
+        }) : null;
+    }
+
     @Override
     protected WebView createViewInstance(ThemedReactContext reactContext) {
+        //@MARK Modification: take a ready WebView from the pool when there is one
+        FilteringReactWebView webView = webViewPool != null ? webViewPool.acquire(reactContext) : null;
+        if (webView == null) {
+            webView = createWebView(reactContext);
+        }
+        reactContext.addLifecycleEventListener(webView);
+        this.currentActivity = reactContext.getCurrentActivity();
+        return webView;
+    }
+
+    /**
+     * Creates and configures a WebView, everything but the parts that depend on props.
+     */
+    private FilteringReactWebView createWebView(ThemedReactContext reactContext) {
         FilteringReactWebView webView = new FilteringReactWebView(reactContext);
-        final WebDownloader webDownloader = new WebDownloader(reactContext);
+        final WebDownloader webDownloader = new WebDownloader(reactContext, webView);
+        webView.setWebDownloader(webDownloader);
+        //@MARK Modification: blob: urls can only be read by the page, which streams them through this bridge
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            webView.addJavascriptInterface(webDownloader.getBlobBridge(), WebDownloader.BLOB_BRIDGE_NAME);
+        }
 
         webView.setWebChromeClient(new WebChromeClient() {
             @Override
@@ -399,19 +962,17 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
                 callback.invoke(origin, true, false);
             }
         });
-        reactContext.addLifecycleEventListener(webView);
         mWebViewConfig.configWebView(webView);
         webView.getSettings().setBuiltInZoomControls(true);
         webView.getSettings().setDisplayZoomControls(false);
         webView.getSettings().setDomStorageEnabled(true);
 
-        this.currentActivity = reactContext.getCurrentActivity();
-
         //@MARK Modification: Add new download listener
         webView.setDownloadListener(new DownloadListener() {
             @Override
             public void onDownloadStart(String url, String userAgent, String contentDisposition, String mimetype, long contentLength) {
-                FLog.d(ReactConstants.TAG, "OnDownloadStart for URL: " + url + " mimetype: " + mimetype);
+                // data: urls can be megabytes long, don't copy them into the log
+                FLog.d(ReactConstants.TAG, "OnDownloadStart for URL: " + (url.length() > 200 ? url.substring(0, 200) + "..." : url) + " mimetype: " + mimetype);
                 webDownloader.download(url, userAgent, contentDisposition, mimetype);            }
         });
 
@@ -482,13 +1043,44 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         ((FilteringReactWebView) view).setInjectedJavaScript(injectedJavaScript);
     }
 
+    //@MARK Modified
+    @ReactProp(name = "injectedJavaScriptBeforeContentLoaded")
+    public void setInjectedJavaScriptBeforeContentLoaded(WebView view, @Nullable String injectedJavaScript) {
+        ((FilteringReactWebView) view).setDocumentStartJavaScript(injectedJavaScript);
+    }
+
     @ReactProp(name = "messagingEnabled")
     public void setMessagingEnabled(WebView view, boolean enabled) {
         ((FilteringReactWebView) view).setMessagingEnabled(enabled);
     }
 
+    //@MARK Modification
+    @ReactProp(name = "leanNavigationEvents")
+    public void setLeanNavigationEvents(WebView view, boolean lean) {
+        ((FilteringReactWebView) view).setLeanNavigationEvents(lean);
+    }
+
+    //@MARK Modified
+    @ReactProp(name = "messagePort")
+    public void setMessagePort(WebView view, boolean enabled) {
+        ((FilteringReactWebView) view).setMessagePortEnabled(enabled);
+    }
+
+    //@MARK Modified
+    @ReactProp(name = "messageBatching")
+    public void setMessageBatching(WebView view, boolean enabled) {
+        ((FilteringReactWebView) view).setMessageBatching(enabled);
+    }
+
     @ReactProp(name = "source")
     public void setSource(WebView view, @Nullable ReadableMap source) {
+        //@MARK Modification: the bundle source, see OfflineBundle
+        if (source != null && source.hasKey("bundle")) {
+            loadOfflineBundle((FilteringReactWebView) view, source);
+            return;
+        }
+        ((FilteringReactWebView) view).setOfflineBundle(null, null);
+
         if (source != null) {
             if (source.hasKey("html")) {
                 String html = source.getString("html");
@@ -547,13 +1139,50 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         view.loadUrl(BLANK_URL);
     }
 
+    private static void loadOfflineBundle(FilteringReactWebView view, ReadableMap source) {
+        String path = source.getString("bundle");
+        if (path.startsWith(FILE_SCHEME)) {
+            path = path.substring(FILE_SCHEME.length());
+        }
+        String origin = source.hasKey("origin") ? source.getString("origin") : DEFAULT_BUNDLE_ORIGIN;
+        while (origin.endsWith("/")) {
+            origin = origin.substring(0, origin.length() - 1);
+        }
+        String entry = source.hasKey("entry") ? source.getString("entry") : "/";
+
+        OfflineBundle bundle;
+        try {
+            bundle = OfflineBundle.get(new File(path), new File(view.getContext().getCacheDir(), BUNDLE_COPY_DIRECTORY));
+        } catch (IOException e) {
+            FLog.e(ReactConstants.TAG, "Could not open offline bundle " + path, e);
+            view.setOfflineBundle(null, null);
+            view.loadUrl(BLANK_URL);
+            return;
+        }
+        view.setOfflineBundle(bundle, origin);
+
+        String url = origin + (entry.startsWith("/") ? entry : "/" + entry);
+        if (!url.equals(view.getUrl())) {
+            view.loadUrl(url);
+        }
+    }
+
+    //@MARK Modified: reports only real changes, see ContentSizeObserver
     @ReactProp(name = "onContentSizeChange")
     public void setOnContentSizeChange(WebView view, boolean sendContentSizeChangeEvents) {
-        if (sendContentSizeChangeEvents) {
-            view.setPictureListener(getPictureListener());
-        } else {
-            view.setPictureListener(null);
-        }
+        ((FilteringReactWebView) view).getContentSizeObserver().setEnabled(sendContentSizeChangeEvents);
+    }
+
+    //@MARK Modification
+    @ReactProp(name = "contentSizeChangeInterval")
+    public void setContentSizeChangeInterval(WebView view, int intervalMs) {
+        ((FilteringReactWebView) view).getContentSizeObserver().setInterval(intervalMs);
+    }
+
+    //@MARK Modification: off unless JS listens, see PerformanceReporter
+    @ReactProp(name = "onPerformanceReport")
+    public void setOnPerformanceReport(WebView view, boolean sendPerformanceReports) {
+        ((FilteringReactWebView) view).getPerformanceReporter().setEnabled(sendPerformanceReports);
     }
 
     @ReactProp(name = "mixedContentMode")
@@ -572,7 +1201,44 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
     //@MARK Modified
     @ReactProp(name = "openInternally")
     public void setOpenInternallyDomainList(WebView view, @Nullable ReadableArray openInternallyList) {
-        this.filteringHelper.setOpenInternallyHosts(openInternallyList.toArrayList());
+        this.filteringHelper.setOpenInternallyHosts(
+                openInternallyList != null ? openInternallyList.toArrayList() : null);
+
+        // Links outside the list open in a custom tab, get the browser ready for them
+        if (openInternallyList != null && openInternallyList.size() > 0) {
+            CustomTabsConnection.warmup(view.getContext());
+        }
+    }
+
+    //@MARK Modified
+    @ReactProp(name = "routingRules")
+    public void setRoutingRules(WebView view, @Nullable ReadableArray routingRules) {
+        logSkippedRules(
+                this.filteringHelper.setRoutingRules(routingRules != null ? routingRules.toArrayList() : null));
+    }
+
+    //@MARK Modified
+    @ReactProp(name = "blockedHosts")
+    public void setBlockedHosts(WebView view, @Nullable ReadableArray blockedHosts) {
+        this.filteringHelper.setBlockedHosts(blockedHosts != null ? blockedHosts.toArrayList() : null);
+    }
+
+    //@MARK Modified
+    @ReactProp(name = "cachedResources")
+    public void setCachedResources(WebView view, @Nullable ReadableArray cachedResources) {
+        ResponseCacheRules rules =
+                ResponseCacheRules.compile(cachedResources != null ? cachedResources.toArrayList() : null);
+        logSkippedRules(rules.getSkippedRules());
+        ((FilteringReactWebView) view).setResponseCacheRules(rules);
+    }
+
+    //@MARK Modified
+    @ReactProp(name = "parallelDownloads")
+    public void setParallelDownloads(WebView view, int connections) {
+        WebDownloader webDownloader = ((FilteringReactWebView) view).getWebDownloader();
+        if (webDownloader != null) {
+            webDownloader.setParallelConnections(connections);
+        }
     }
 
     //@MARK Modified
@@ -589,6 +1255,21 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         view.setWebViewClient(new FilteringReactWebViewClient(this.filteringHelper, this.customTabsHelper));
     }
 
+    @Override
+    public
+    @Nullable
+    Map<String, Object> getExportedCustomDirectEventTypeConstants() {
+        Map<String, Object> export = super.getExportedCustomDirectEventTypeConstants();
+        if (export == null) {
+            export = MapBuilder.newHashMap();
+        }
+        export.put(DownloadTracker.EVENT_DOWNLOAD_PROGRESS, MapBuilder.of("registrationName", "onDownloadProgress"));
+        export.put(DownloadTracker.EVENT_DOWNLOAD_COMPLETE, MapBuilder.of("registrationName", "onDownloadComplete"));
+        export.put(EVENT_MESSAGE_BATCH, MapBuilder.of("registrationName", "onMessageBatch"));
+        export.put(PerformanceReporter.EVENT_PERFORMANCE_REPORT, MapBuilder.of("registrationName", "onPerformanceReport"));
+        return export;
+    }
+
     @Override
     public
     @Nullable
@@ -601,6 +1282,9 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         map.put("stopLoading", COMMAND_STOP_LOADING);
         map.put("postMessage", COMMAND_POST_MESSAGE);
         map.put("injectJavaScript", COMMAND_INJECT_JAVASCRIPT);
+        map.put("mayLaunchUrl", COMMAND_MAY_LAUNCH_URL);
+        map.put("acknowledgeMessages", COMMAND_ACKNOWLEDGE_MESSAGES);
+        map.put("prefetch", COMMAND_PREFETCH);
 
         return map;
     }
@@ -621,27 +1305,34 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
                 root.stopLoading();
                 break;
             case COMMAND_POST_MESSAGE:
-                try {
-                    JSONObject eventInitDict = new JSONObject();
-                    eventInitDict.put("data", args.getString(0));
-                    root.loadUrl("javascript:(function () {" +
-                            "var event;" +
-                            "var data = " + eventInitDict.toString() + ";" +
-                            "try {" +
-                            "event = new MessageEvent('message', data);" +
-                            "} catch (e) {" +
-                            "event = document.createEvent('MessageEvent');" +
-                            "event.initMessageEvent('message', true, true, data.data, data.origin, data.lastEventId, data.source);" +
-                            "}" +
-                            "document.dispatchEvent(event);" +
-                            "})();");
-                } catch (JSONException e) {
-                    throw new RuntimeException(e);
-                }
+                //@MARK Modified: delivered once per frame, see OutgoingMessageQueue
+                ((FilteringReactWebView) root).postMessageToPage(args.getString(0));
                 break;
             case COMMAND_INJECT_JAVASCRIPT:
                 root.loadUrl("javascript:" + args.getString(0));
                 break;
+            case COMMAND_MAY_LAUNCH_URL:
+                List<String> otherUrls = new ArrayList<>();
+                for (int i = 1; i < args.size(); i++) {
+                    otherUrls.add(args.getString(i));
+                }
+                CustomTabsConnection.mayLaunchUrl(root.getContext(), args.getString(0), otherUrls);
+                break;
+            case COMMAND_ACKNOWLEDGE_MESSAGES:
+                ((FilteringReactWebView) root).acknowledgeMessages();
+                break;
+            case COMMAND_PREFETCH:
+                // Prefetched responses can only be served with the request method, see ResponseCacheInterceptor
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    List<String> urls = new ArrayList<>(args.size());
+                    for (int i = 0; i < args.size(); i++) {
+                        urls.add(args.getString(i));
+                    }
+                    ResponseCacheInterceptor.getInstance(root.getContext()).prefetch(urls,
+                            root.getSettings().getUserAgentString(),
+                            ((FilteringReactWebView) root).getResponseCacheRules());
+                }
+                break;
         }
     }
 
@@ -650,30 +1341,21 @@ public class CustomWebViewManager extends SimpleViewManager<WebView> {
         super.onDropViewInstance(webView);
 
         ((ThemedReactContext) webView.getContext()).removeLifecycleEventListener((FilteringReactWebView) webView);
-        ((FilteringReactWebView) webView).cleanupCallbacksAndDestroy();
-    }
-
-    private WebView.PictureListener getPictureListener() {
-        if (mPictureListener == null) {
-            mPictureListener = new WebView.PictureListener() {
-                @Override
-                public void onNewPicture(WebView webView, Picture picture) {
-                    dispatchEvent(
-                            webView,
-                            new ContentSizeChangeEvent(
-                                    webView.getId(),
-                                    webView.getWidth(),
-                                    webView.getContentHeight()));
-                }
-            };
+        //@MARK Modification: keep the view for reuse when pooling is on
+        if (webViewPool == null || !webViewPool.release((FilteringReactWebView) webView)) {
+            ((FilteringReactWebView) webView).cleanupCallbacksAndDestroy();
+        }
+    }
+
+    //@MARK Modification: a bad rule should not take the app down
+    private static void logSkippedRules(List<String> skippedRules) {
+        for (String skippedRule : skippedRules) {
+            FLog.w(ReactConstants.TAG, skippedRule + ", skipped");
         }
-        return mPictureListener;
     }
 
-    private static void dispatchEvent(WebView webView, Event event) {
-        ReactContext reactContext = (ReactContext) webView.getContext();
-        EventDispatcher eventDispatcher =
-                reactContext.getNativeModule(UIManagerModule.class).getEventDispatcher();
-        eventDispatcher.dispatchEvent(event);
+    //@MARK Modified: the dispatcher is cached, see CustomWebViewEvent
+    private static void dispatchEvent(WebView webView, Event<?> event) {
+        CustomWebViewEvent.dispatch((ReactContext) webView.getContext(), event);
     }
 }
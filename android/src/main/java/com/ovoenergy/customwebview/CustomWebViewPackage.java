@@ -5,12 +5,44 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import android.support.annotation.Nullable;
+
 import com.facebook.react.ReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.uimanager.ViewManager;
 
 public class CustomWebViewPackage implements ReactPackage {
+    private int webViewPoolSize;
+    private boolean preloadWebView;
+    @Nullable
+    private CustomWebViewManager.PreloadListener preloadListener;
+
+    /**
+     * Opt-in WebView pooling, see {@link CustomWebViewManager#setWebViewPoolSize}.
+     */
+    public CustomWebViewPackage setWebViewPoolSize(int size) {
+      this.webViewPoolSize = size;
+      return this;
+    }
+
+    /**
+     * Opt-in WebView provider preloading once React starts, see {@link CustomWebViewManager#preloadWebView}.
+     */
+    public CustomWebViewPackage preloadWebView(@Nullable CustomWebViewManager.PreloadListener listener) {
+      this.preloadWebView = true;
+      this.preloadListener = listener;
+      return this;
+    }
+
+    /**
+     * Disk space for the `cachedResources` response cache, see {@link CustomWebViewManager#setResponseCacheSize}.
+     */
+    public CustomWebViewPackage setResponseCacheSize(long bytes) {
+      CustomWebViewManager.setResponseCacheSize(bytes);
+      return this;
+    }
+
     @Override
     public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
       return Collections.emptyList();
@@ -18,6 +50,11 @@ public class CustomWebViewPackage implements ReactPackage {
 
     @Override
     public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-      return Arrays.<ViewManager>asList(new CustomWebViewManager());
+      if (preloadWebView) {
+        CustomWebViewManager.preloadWebView(reactContext, preloadListener);
+      }
+      CustomWebViewManager manager = new CustomWebViewManager();
+      manager.setWebViewPoolSize(webViewPoolSize);
+      return Arrays.<ViewManager>asList(manager);
     }
 }
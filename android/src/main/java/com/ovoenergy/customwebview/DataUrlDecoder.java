@@ -0,0 +1,103 @@
+package com.ovoenergy.customwebview;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Decodes {@code data:} urls straight into an OutputStream, reading the url in fixed-size pieces so
+ * the decoded payload never exists in memory as a whole.
+ */
+final class DataUrlDecoder {
+
+    private static final String SCHEME = "data:";
+    private static final String BASE64 = ";base64";
+    private static final String DEFAULT_MIME_TYPE = "text/plain";
+
+    private DataUrlDecoder() {
+    }
+
+    static boolean isDataUrl(String url) {
+        return url != null && url.regionMatches(true, 0, SCHEME, 0, SCHEME.length());
+    }
+
+    /**
+     * @return the media type of the url, without parameters, e.g. "text/csv"
+     */
+    static String getMimeType(String url) {
+        int comma = url.indexOf(',');
+        String header = url.substring(SCHEME.length(), comma < 0 ? url.length() : comma);
+        int semicolon = header.indexOf(';');
+        String mimeType = (semicolon < 0 ? header : header.substring(0, semicolon)).trim();
+        return mimeType.isEmpty() ? DEFAULT_MIME_TYPE : mimeType.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return the number of bytes written
+     * @throws IOException if the url is not a valid data url, or writing fails
+     */
+    static long decode(String url, OutputStream out) throws IOException {
+        if (!isDataUrl(url)) {
+            throw new IOException("Not a data url");
+        }
+        int comma = url.indexOf(',');
+        if (comma < 0) {
+            throw new IOException("Data url has no data");
+        }
+        boolean base64 = url.regionMatches(true, comma - BASE64.length(), BASE64, 0, BASE64.length());
+
+        return base64 ? decodeBase64(url, comma + 1, out) : decodePercentEncoded(url, comma + 1, out);
+    }
+
+    private static long decodeBase64(String url, int start, OutputStream out) throws IOException {
+        Base64StreamDecoder decoder = new Base64StreamDecoder(out);
+        // Whole quanta per piece, so each piece maps to a fixed amount of output
+        int pieceLength = Base64StreamDecoder.BUFFER_SIZE / 3 * 4;
+        for (int i = start; i < url.length(); i += pieceLength) {
+            decoder.write(url, i, Math.min(url.length(), i + pieceLength));
+        }
+        decoder.finish();
+        return decoder.getBytesWritten();
+    }
+
+    private static long decodePercentEncoded(String url, int start, OutputStream out) throws IOException {
+        byte[] buffer = new byte[Base64StreamDecoder.BUFFER_SIZE];
+        int buffered = 0;
+        long written = 0;
+        for (int i = start; i < url.length(); i++) {
+            if (buffered + 4 > buffer.length) {
+                out.write(buffer, 0, buffered);
+                written += buffered;
+                buffered = 0;
+            }
+
+            char c = url.charAt(i);
+            if (c == '%' && i + 2 < url.length() && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2))) {
+                buffer[buffered++] = (byte) Integer.parseInt(url.substring(i + 1, i + 3), 16);
+                i += 2;
+            } else if (c < 0x80) {
+                buffer[buffered++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[buffered++] = (byte) (0xC0 | (c >> 6));
+                buffer[buffered++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < url.length() && Character.isLowSurrogate(url.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, url.charAt(++i));
+                buffer[buffered++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[buffered++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[buffered++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[buffered++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buffer[buffered++] = (byte) (0xE0 | (c >> 12));
+                buffer[buffered++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[buffered++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        out.write(buffer, 0, buffered);
+        out.flush();
+        return written + buffered;
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -0,0 +1,346 @@
+package com.ovoenergy.customwebview;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index of finished downloads keyed by url, so a file that has not changed on the server is not
+ * downloaded again.
+ *
+ * Each entry keeps the ETag and Last-Modified validators of the download plus the SHA-256 of the
+ * local file. {@link #lookup} sends a conditional HEAD request with those validators, and a 304 answer
+ * returns the local file, after checking it was not modified or replaced since. Urls without an entry
+ * are not requested at all. The validators recorded have to describe the bytes that were actually
+ * downloaded, see {@link #fetchValidators} for downloads that don't report them. The index is kept
+ * in memory and written to a small binary file on every change. Thread-safe.
+ */
+final class DownloadCache {
+
+    static final int MAX_ENTRIES = 256;
+
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 15000;
+
+    /**
+     * Result of {@link #lookup} and {@link #fetchValidators}. The validators are passed to
+     * {@link #record} once the download finished.
+     */
+    static final class Lookup {
+        static final Lookup NONE = new Lookup(null, null, null);
+
+        // The up to date local copy, or null when the url has to be downloaded
+        final File file;
+        final String etag;
+        final String lastModified;
+
+        Lookup(File file, String etag, String lastModified) {
+            this.file = file;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+
+        boolean hasSameValidators(Lookup other) {
+            return equals(etag, other.etag) && equals(lastModified, other.lastModified);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private final File indexFile;
+    // Guarded by this, loaded on first use. Access ordered, so the least recently used url goes first.
+    private Map<String, Entry> entries;
+
+    DownloadCache(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Asks the server whether {@code url} changed since it was recorded, without downloading it again
+     * when it did. Blocks on the network, but only when the url has an entry.
+     *
+     * @param headers sent with the request, e.g. the page's Cookie and User-Agent
+     * @return the local copy, or {@link Lookup#NONE} when the url has to be downloaded
+     */
+    Lookup lookup(String url, Map<String, String> headers) {
+        Entry entry;
+        synchronized (this) {
+            entry = getEntries().get(url);
+        }
+        if (entry == null) {
+            return Lookup.NONE;
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = open(url, headers, "HEAD");
+            if (entry.etag != null) {
+                connection.setRequestProperty("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", entry.lastModified);
+            }
+
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                File file = verify(url, entry);
+                if (file != null) {
+                    return new Lookup(file, entry.etag, entry.lastModified);
+                }
+            } else {
+                // A changed file is downloaded again, and recorded with the validators of that download
+                remove(url);
+            }
+            return Lookup.NONE;
+        } catch (IOException e) {
+            return Lookup.NONE;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Asks the server for the current validators of {@code url} with a HEAD request, for downloads
+     * that don't report the ones of the response they read. Blocks on the network.
+     *
+     * @return the validators, or {@link Lookup#NONE} when the server sent none or failed
+     */
+    static Lookup fetchValidators(String url, Map<String, String> headers) {
+        HttpURLConnection connection = null;
+        try {
+            connection = open(url, headers, "HEAD");
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return Lookup.NONE;
+            }
+            return new Lookup(null, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        } catch (IOException e) {
+            return Lookup.NONE;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static HttpURLConnection open(String url, Map<String, String> headers, String method)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestMethod(method);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getValue() != null) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Remembers a finished download. Hashes the file, so should not be called on the UI thread.
+     */
+    void record(String url, File file, Lookup lookup) throws IOException {
+        if (!lookup.hasValidator()) {
+            // Can't be revalidated, every request would download it again anyway
+            remove(url);
+            return;
+        }
+
+        Entry entry = new Entry(lookup.etag, lookup.lastModified, sha256(file), file.getAbsolutePath(),
+                file.length(), file.lastModified());
+        synchronized (this) {
+            getEntries().put(url, entry);
+            save();
+        }
+    }
+
+    synchronized void remove(String url) {
+        if (getEntries().remove(url) != null) {
+            saveQuietly();
+        }
+    }
+
+    synchronized int size() {
+        return getEntries().size();
+    }
+
+    /**
+     * @return the recorded file if it is still the one that was downloaded, otherwise null
+     */
+    private File verify(String url, Entry entry) throws IOException {
+        File file = new File(entry.path);
+        if (!file.isFile() || file.length() != entry.length) {
+            remove(url);
+            return null;
+        }
+        if (file.lastModified() == entry.fileModified) {
+            return file;
+        }
+
+        // Touched since, only hash when the cheap check fails
+        if (!sha256(file).equals(entry.sha256)) {
+            remove(url);
+            return null;
+        }
+        synchronized (this) {
+            getEntries().put(url, new Entry(entry.etag, entry.lastModified, entry.sha256, entry.path,
+                    entry.length, file.lastModified()));
+            saveQuietly();
+        }
+        return file;
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // Guarded by this
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+            try {
+                load();
+            } catch (IOException e) {
+                // Unreadable index, start over
+                entries.clear();
+            }
+        }
+        return entries;
+    }
+
+    // Guarded by this
+    private void load() throws IOException {
+        if (!indexFile.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                entries.put(url, new Entry(readNullable(in), readNullable(in), in.readUTF(), in.readUTF(),
+                        in.readLong(), in.readLong()));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // Guarded by this
+    private void save() throws IOException {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            // Least recently used first, so loading restores the same order
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> item = iterator.next();
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                writeNullable(out, entry.etag);
+                writeNullable(out, entry.lastModified);
+                out.writeUTF(entry.sha256);
+                out.writeUTF(entry.path);
+                out.writeLong(entry.length);
+                out.writeLong(entry.fileModified);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(indexFile)) {
+            throw new IOException("Could not save " + indexFile);
+        }
+    }
+
+    // Guarded by this
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            // Kept in memory, saved again with the next change
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static final class Entry {
+        final String etag;
+        final String lastModified;
+        final String sha256;
+        final String path;
+        final long length;
+        final long fileModified;
+
+        Entry(String etag, String lastModified, String sha256, String path, long length, long fileModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.path = path;
+            this.length = length;
+            this.fileModified = fileModified;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.ovoenergy.customwebview;
+
+import android.app.DownloadManager;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.common.ReactConstants;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows enqueued {@link DownloadManager} downloads and reports them to JS.
+ *
+ * A single poller queries every download in flight with one cursor at a fixed interval. Each poll
+ * emits one coalescing `topDownloadProgress` event per WebView, listing all of its downloads, plus a
+ * `topDownloadComplete` event for each download that finished. The poller stops as soon as nothing
+ * is in flight.
+ */
+class DownloadTracker {
+
+    /**
+     * Notified on the tracker's thread when a DownloadManager download ends.
+     */
+    interface CompletionListener {
+        void onComplete(long downloadId, String status, @Nullable String localUri);
+    }
+
+    static final String EVENT_DOWNLOAD_PROGRESS = "topDownloadProgress";
+    static final String EVENT_DOWNLOAD_COMPLETE = "topDownloadComplete";
+
+    private static final long POLL_INTERVAL_MS = 500;
+
+    private static DownloadTracker sInstance;
+
+    private final DownloadManager downloadManager;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DownloadTracker");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    private final Runnable pollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                FLog.e(ReactConstants.TAG, "Could not poll downloads", e);
+            }
+        }
+    };
+
+    // Guarded by this
+    private final Map<Long, TrackedDownload> downloads = new LinkedHashMap<>();
+    private ScheduledFuture<?> pollFuture;
+    // In-process downloads get negative ids, so they never clash with DownloadManager's
+    private long nextInProcessId = -1;
+
+    private DownloadTracker(Context context) {
+        this.downloadManager = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
+    }
+
+    static synchronized DownloadTracker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DownloadTracker(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts reporting progress for an enqueued download to the given view.
+     */
+    synchronized void track(long downloadId, String url, ReactContext reactContext, int viewTag,
+                            @Nullable CompletionListener listener) {
+        downloads.put(downloadId, new TrackedDownload(downloadId, url, reactContext, viewTag, null, listener));
+        startPolling();
+    }
+
+    /**
+     * Starts reporting progress for a download that runs in-process instead of through
+     * DownloadManager, see {@link RangedDownloader}. The caller updates the returned progress, and
+     * ends tracking with {@link #untrack} and {@link #emitComplete}.
+     */
+    synchronized InProcessProgress trackInProcess(String url, ReactContext reactContext, int viewTag) {
+        InProcessProgress progress = new InProcessProgress(newInProcessId());
+        downloads.put(progress.id, new TrackedDownload(progress.id, url, reactContext, viewTag, progress, null));
+        startPolling();
+        return progress;
+    }
+
+    /**
+     * An id for a download that is not in DownloadManager's queue, e.g. one answered with an earlier
+     * file, see {@link DownloadCache}.
+     */
+    synchronized long newInProcessId() {
+        return nextInProcessId--;
+    }
+
+    synchronized void untrack(long downloadId) {
+        downloads.remove(downloadId);
+    }
+
+    /**
+     * Reports a download that finished without going through DownloadManager's queue.
+     */
+    static void emitComplete(ReactContext reactContext, int viewTag, long downloadId, String url,
+                             String status, String localUri, String reason) {
+        WritableMap event = Arguments.createMap();
+        event.putDouble("id", downloadId);
+        event.putString("url", url);
+        event.putString("status", status);
+        event.putString("localUri", localUri);
+        event.putString("reason", reason);
+        CustomWebViewEvent.dispatch(reactContext, new CustomWebViewEvent(viewTag, EVENT_DOWNLOAD_COMPLETE, event, false));
+    }
+
+    private void poll() {
+        long[] ids;
+        synchronized (this) {
+            if (downloads.isEmpty()) {
+                stopPolling();
+                return;
+            }
+            int count = 0;
+            for (TrackedDownload download : downloads.values()) {
+                if (download.inProcess == null) {
+                    count++;
+                }
+            }
+            ids = new long[count];
+            int i = 0;
+            for (TrackedDownload download : downloads.values()) {
+                if (download.inProcess == null) {
+                    ids[i++] = download.id;
+                }
+            }
+        }
+
+        Set<Long> queried = new HashSet<>(ids.length * 2);
+        for (long id : ids) {
+            queried.add(id);
+        }
+        Map<Long, DownloadState> states = new HashMap<>(ids.length * 2);
+        Cursor cursor = ids.length == 0 ? null : downloadManager.query(new DownloadManager.Query().setFilterById(ids));
+        if (cursor != null) {
+            try {
+                int idColumn = cursor.getColumnIndex(DownloadManager.COLUMN_ID);
+                int statusColumn = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS);
+                int reasonColumn = cursor.getColumnIndex(DownloadManager.COLUMN_REASON);
+                int downloadedColumn = cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR);
+                int totalColumn = cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES);
+                int localUriColumn = cursor.getColumnIndex(DownloadManager.COLUMN_LOCAL_URI);
+                while (cursor.moveToNext()) {
+                    DownloadState state = new DownloadState();
+                    state.status = cursor.getInt(statusColumn);
+                    state.reason = cursor.getInt(reasonColumn);
+                    state.bytesDownloaded = cursor.getLong(downloadedColumn);
+                    state.totalBytes = cursor.getLong(totalColumn);
+                    state.localUri = cursor.getString(localUriColumn);
+                    states.put(cursor.getLong(idColumn), state);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        Map<ReactContext, Map<Integer, WritableArray>> progressByView = new HashMap<>();
+        synchronized (this) {
+            Iterator<TrackedDownload> iterator = downloads.values().iterator();
+            while (iterator.hasNext()) {
+                TrackedDownload download = iterator.next();
+                if (download.inProcess == null && !queried.contains(download.id)) {
+                    // Tracked after the query, a missing state would look like a cancelled download
+                    continue;
+                }
+                ReactContext reactContext = download.reactContext.get();
+                DownloadState state = download.inProcess != null
+                        ? download.inProcess.toState()
+                        : states.get(download.id);
+
+                if (state == null || state.status == DownloadManager.STATUS_SUCCESSFUL
+                        || state.status == DownloadManager.STATUS_FAILED) {
+                    iterator.remove();
+                    if (download.listener != null && state != null) {
+                        download.listener.onComplete(download.id, getStatusName(state.status), state.localUri);
+                    }
+                    if (reactContext != null) {
+                        emitComplete(reactContext, download.viewTag, download.id, download.url,
+                                state == null ? "cancelled" : getStatusName(state.status),
+                                state == null ? null : state.localUri,
+                                state == null || state.status != DownloadManager.STATUS_FAILED ? null : String.valueOf(state.reason));
+                    }
+                    continue;
+                }
+                if (reactContext == null) {
+                    // The app was reloaded, nobody is listening any more
+                    iterator.remove();
+                    continue;
+                }
+
+                Map<Integer, WritableArray> views = progressByView.get(reactContext);
+                if (views == null) {
+                    views = new HashMap<>();
+                    progressByView.put(reactContext, views);
+                }
+                WritableArray progress = views.get(download.viewTag);
+                if (progress == null) {
+                    progress = Arguments.createArray();
+                    views.put(download.viewTag, progress);
+                }
+                WritableMap item = Arguments.createMap();
+                item.putDouble("id", download.id);
+                item.putString("url", download.url);
+                item.putString("status", getStatusName(state.status));
+                item.putDouble("bytesDownloaded", state.bytesDownloaded);
+                item.putDouble("totalBytes", state.totalBytes);
+                progress.pushMap(item);
+            }
+
+            if (downloads.isEmpty()) {
+                stopPolling();
+            }
+        }
+
+        for (Map.Entry<ReactContext, Map<Integer, WritableArray>> context : progressByView.entrySet()) {
+            for (Map.Entry<Integer, WritableArray> view : context.getValue().entrySet()) {
+                WritableMap event = Arguments.createMap();
+                event.putArray("downloads", view.getValue());
+                CustomWebViewEvent.dispatch(context.getKey(),
+                        new CustomWebViewEvent(view.getKey(), EVENT_DOWNLOAD_PROGRESS, event, true));
+            }
+        }
+    }
+
+    // Guarded by this
+    private void startPolling() {
+        if (pollFuture == null) {
+            pollFuture = scheduler.scheduleWithFixedDelay(pollRunnable, 0, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Guarded by this
+    private void stopPolling() {
+        if (pollFuture != null) {
+            pollFuture.cancel(false);
+            pollFuture = null;
+        }
+    }
+
+    private static String getStatusName(int status) {
+        switch (status) {
+            case DownloadManager.STATUS_PENDING:
+                return "pending";
+            case DownloadManager.STATUS_RUNNING:
+                return "running";
+            case DownloadManager.STATUS_PAUSED:
+                return "paused";
+            case DownloadManager.STATUS_SUCCESSFUL:
+                return "successful";
+            default:
+                return "failed";
+        }
+    }
+
+    private static class TrackedDownload {
+        final long id;
+        final String url;
+        // Downloads can outlive the React instance that started them
+        final WeakReference<ReactContext> reactContext;
+        final int viewTag;
+        // Null for DownloadManager downloads
+        final InProcessProgress inProcess;
+        final CompletionListener listener;
+
+        TrackedDownload(long id, String url, ReactContext reactContext, int viewTag, InProcessProgress inProcess,
+                        CompletionListener listener) {
+            this.id = id;
+            this.url = url;
+            this.reactContext = new WeakReference<>(reactContext);
+            this.viewTag = viewTag;
+            this.inProcess = inProcess;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Progress of an in-process download, updated by whichever thread runs it.
+     */
+    static class InProcessProgress {
+        final long id;
+        volatile long bytesDownloaded;
+        volatile long totalBytes = -1;
+
+        InProcessProgress(long id) {
+            this.id = id;
+        }
+
+        DownloadState toState() {
+            DownloadState state = new DownloadState();
+            state.status = DownloadManager.STATUS_RUNNING;
+            state.bytesDownloaded = bytesDownloaded;
+            state.totalBytes = totalBytes;
+            return state;
+        }
+    }
+
+    private static class DownloadState {
+        int status;
+        int reason;
+        long bytesDownloaded;
+        long totalBytes;
+        String localUri;
+    }
+}
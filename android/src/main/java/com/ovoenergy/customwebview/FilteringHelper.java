@@ -1,31 +1,170 @@
 package com.ovoenergy.customwebview;
 
-import java.net.URI;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class FilteringHelper {
+    private static final String BLANK_URL = "about:blank";
+
+    // Blocklists can have 100k hosts, they are compiled off the UI thread, one at a time
+    private static final Executor BLOCKLIST_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FilteringHelper-blocklist");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
     private List<Object> openInternallyHosts = Collections.emptyList();
+    // Compiled once per prop change, see HostMatcher
+    private volatile HostMatcher openInternallyMatcher = HostMatcher.EMPTY;
+    private volatile RoutingRules routingRules = RoutingRules.EMPTY;
+    private volatile HostBlocklist blockedHosts = HostBlocklist.EMPTY;
+    // The list last passed to setBlockedHosts, only the latest one is swapped in once compiled
+    private volatile List<Object> blockedHostList = Collections.emptyList();
+    // Bumped on every configuration change so cached routes can be invalidated, see RouteCache
+    private volatile int generation;
 
     public FilteringHelper(List<Object> filterList) {
-        this.openInternallyHosts = filterList;
+        setOpenInternallyHosts(filterList);
     }
 
     public boolean shouldOpenInternally(String urlString) {
-        if (this.openInternallyHosts.size() == 0) {
+        UrlScanner scanner = new UrlScanner();
+        scanner.scan(urlString);
+
+        return shouldOpenInternally(scanner);
+    }
+
+    /**
+     * Allocation-free variant for callers that already scanned the URL.
+     */
+    boolean shouldOpenInternally(UrlScanner scannedUrl) {
+        HostMatcher matcher = this.openInternallyMatcher;
+        if (matcher.isEmpty()) {
             return true;
         }
-        URI uri = URI.create(urlString);
 
-        return this.openInternallyHosts.contains(uri.getHost());
+        return scannedUrl.hasHost()
+                && matcher.matches(scannedUrl.getUrl(), scannedUrl.getHostStart(), scannedUrl.getHostEnd());
     }
 
+    /**
+     * Decides where a top level navigation to the scanned url should be handled.
+     */
+    NavigationRoute route(UrlScanner scannedUrl) {
+        RoutingRules rules = this.routingRules;
+        if (!rules.isEmpty()) {
+            NavigationRoute route = rules.match(scannedUrl.getUrl());
+            if (route != null) {
+                return route;
+            }
+        }
+
+        // If weblink
+        if (scannedUrl.isWebUrl() || BLANK_URL.equals(scannedUrl.getUrl())) {
+            // If not in whitelist, open custom tab
+            return shouldOpenInternally(scannedUrl) ? NavigationRoute.INTERNAL : NavigationRoute.CUSTOM_TAB;
+        }
+        return NavigationRoute.EXTERNAL;
+    }
+
+    /**
+     * Whether the route of the scanned url only depends on its scheme and authority, so it can be
+     * cached.
+     */
+    boolean isRouteCacheable(UrlScanner scannedUrl) {
+        // about:blank is routed differently from other about: urls
+        return scannedUrl.hasScheme() && !scannedUrl.schemeIs("about") && routingRules.isHostLevel();
+    }
+
+    /**
+     * Whether a request to the scanned url should be blocked. Called for every request the WebView
+     * makes, from the WebView's IO threads.
+     */
+    boolean shouldBlock(UrlScanner scannedUrl) {
+        HostBlocklist blocklist = this.blockedHosts;
+        return !blocklist.isEmpty()
+                && scannedUrl.hasHost()
+                && blocklist.isBlocked(scannedUrl.getUrl(), scannedUrl.getHostStart(), scannedUrl.getHostEnd());
+    }
+
+    boolean isBlockingEnabled() {
+        return !blockedHosts.isEmpty();
+    }
+
+    int getGeneration() {
+        return generation;
+    }
 
     public List<Object> getOpenInternallyHosts() {
         return openInternallyHosts;
     }
 
     public void setOpenInternallyHosts(List<Object> openInternallyHosts) {
+        if (openInternallyHosts == null) {
+            openInternallyHosts = Collections.emptyList();
+        }
         this.openInternallyHosts = openInternallyHosts;
+        this.openInternallyMatcher = HostMatcher.compile(openInternallyHosts);
+        this.generation++;
+    }
+
+    /**
+     * Rules are evaluated before openInternally, see {@link RoutingRules}.
+     *
+     * @return why each malformed rule was skipped
+     */
+    public List<String> setRoutingRules(List<Object> routingRules) {
+        this.routingRules = RoutingRules.compile(routingRules);
+        this.generation++;
+        return this.routingRules.getSkippedRules();
+    }
+
+    /**
+     * Requests to these hosts, or their subdomains, are answered with an empty response.
+     *
+     * The prop is set again on every mount, an equal list is ignored. A new list is compiled in the
+     * background, the previous one stays in effect until then.
+     */
+    public void setBlockedHosts(List<Object> blockedHosts) {
+        setBlockedHosts(blockedHosts, BLOCKLIST_EXECUTOR);
+    }
+
+    void setBlockedHosts(List<Object> blockedHosts, Executor executor) {
+        if (blockedHosts == null) {
+            blockedHosts = Collections.emptyList();
+        }
+        if (blockedHosts.equals(this.blockedHostList)) {
+            return;
+        }
+
+        final List<Object> hosts = blockedHosts;
+        synchronized (this) {
+            this.blockedHostList = hosts;
+            if (hosts.isEmpty()) {
+                this.blockedHosts = HostBlocklist.EMPTY;
+                return;
+            }
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (hosts != blockedHostList) {
+                    // Replaced before it was compiled
+                    return;
+                }
+                HostBlocklist blocklist = HostBlocklist.compile(hosts);
+                synchronized (FilteringHelper.this) {
+                    if (hosts == blockedHostList) {
+                        FilteringHelper.this.blockedHosts = blocklist;
+                    }
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,81 @@
+package com.ovoenergy.customwebview;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable set of blocked hosts. A blocked host also blocks all of its subdomains.
+ *
+ * Every request is checked against the list, and nearly all of them are not blocked, so lookups go
+ * through a {@link BloomFilter} first and only consult the exact set, which needs a substring, when
+ * the filter reports a possible match.
+ */
+final class HostBlocklist {
+
+    static final HostBlocklist EMPTY = new HostBlocklist(new BloomFilter(1, 0.5), new HashSet<String>());
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final BloomFilter filter;
+    private final Set<String> hosts;
+
+    private HostBlocklist(BloomFilter filter, Set<String> hosts) {
+        this.filter = filter;
+        this.hosts = hosts;
+    }
+
+    /**
+     * Compiles the given hosts. Entries that are not strings, or are empty, are ignored.
+     */
+    static HostBlocklist compile(List<?> blockedHosts) {
+        if (blockedHosts == null || blockedHosts.isEmpty()) {
+            return EMPTY;
+        }
+
+        BloomFilter filter = new BloomFilter(blockedHosts.size(), FALSE_POSITIVE_RATE);
+        Set<String> hosts = new HashSet<>(blockedHosts.size() * 2);
+        for (Object blockedHost : blockedHosts) {
+            if (!(blockedHost instanceof String) || ((String) blockedHost).isEmpty()) {
+                continue;
+            }
+            String host = ((String) blockedHost).toLowerCase(Locale.ENGLISH);
+            if (hosts.add(host)) {
+                filter.put(host);
+            }
+        }
+        return hosts.isEmpty() ? EMPTY : new HostBlocklist(filter, hosts);
+    }
+
+    boolean isEmpty() {
+        return hosts.isEmpty();
+    }
+
+    int size() {
+        return hosts.size();
+    }
+
+    boolean isBlocked(String host) {
+        return host != null && isBlocked(host, 0, host.length());
+    }
+
+    /**
+     * Checks the host found in {@code source} between {@code start} and {@code end}, and each of its
+     * parent domains.
+     */
+    boolean isBlocked(String source, int start, int end) {
+        if (hosts.isEmpty() || end <= start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (i == start || source.charAt(i - 1) == '.') {
+                if (filter.mightContain(source, i, end)
+                        && hosts.contains(source.substring(i, end).toLowerCase(Locale.ENGLISH))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,188 @@
+package com.ovoenergy.customwebview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable matcher for a list of host patterns, compiled into a trie of reversed host characters.
+ *
+ * Supported patterns:
+ *  - "example.com"   - matches the exact host only
+ *  - "*.example.com" - matches any subdomain of example.com, but not example.com itself
+ *  - "*"             - matches every host
+ *
+ * Matching is ASCII case-insensitive. Lookups walk the host once from its last character and do not
+ * allocate, so they are safe to run on every navigation.
+ */
+final class HostMatcher {
+
+    static final HostMatcher EMPTY = new HostMatcher(new Node(), false, 0);
+
+    private static final String WILDCARD_PREFIX = "*.";
+    private static final String MATCH_ALL = "*";
+
+    private final Node root;
+    private final boolean matchAll;
+    private final int size;
+
+    private HostMatcher(Node root, boolean matchAll, int size) {
+        this.root = root;
+        this.matchAll = matchAll;
+        this.size = size;
+    }
+
+    /**
+     * Compiles the given patterns. Entries that are not strings, or are empty, are ignored.
+     */
+    static HostMatcher compile(List<?> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return EMPTY;
+        }
+
+        Builder root = new Builder();
+        boolean matchAll = false;
+        int size = 0;
+
+        for (Object pattern : patterns) {
+            if (!(pattern instanceof String)) {
+                continue;
+            }
+            String host = (String) pattern;
+            if (host.endsWith(".")) {
+                host = host.substring(0, host.length() - 1);
+            }
+            if (host.isEmpty()) {
+                continue;
+            }
+            if (host.equals(MATCH_ALL)) {
+                matchAll = true;
+                size++;
+                continue;
+            }
+
+            boolean wildcard = host.startsWith(WILDCARD_PREFIX);
+            if (wildcard) {
+                host = host.substring(WILDCARD_PREFIX.length());
+                if (host.isEmpty()) {
+                    continue;
+                }
+            }
+
+            Builder node = root;
+            for (int i = host.length() - 1; i >= 0; i--) {
+                node = node.child(toLowerCase(host.charAt(i)));
+            }
+            if (wildcard) {
+                node.wildcard = true;
+            } else {
+                node.exact = true;
+            }
+            size++;
+        }
+
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new HostMatcher(root.build(), matchAll, size);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean matches(String host) {
+        return host != null && matches(host, 0, host.length());
+    }
+
+    /**
+     * Matches the host found in {@code source} between {@code start} (inclusive) and {@code end}
+     * (exclusive), so callers can match a host inside a full URL without extracting it first.
+     */
+    boolean matches(String source, int start, int end) {
+        if (matchAll) {
+            return true;
+        }
+        // Fully qualified hosts may end with a dot
+        if (end > start && source.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end <= start) {
+            return false;
+        }
+
+        Node node = root;
+        for (int i = end - 1; i >= start; i--) {
+            char c = toLowerCase(source.charAt(i));
+            if (c == '.' && node.wildcard) {
+                return true;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.exact;
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        boolean exact;
+        boolean wildcard;
+
+        Node child(char c) {
+            // Most nodes have a single child, skip the binary search for them
+            if (keys.length == 1) {
+                return keys[0] == c ? children[0] : null;
+            }
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    private static final class Builder {
+        final Map<Character, Builder> children = new TreeMap<>();
+        boolean exact;
+        boolean wildcard;
+
+        Builder child(char c) {
+            Builder child = children.get(c);
+            if (child == null) {
+                child = new Builder();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        Node build() {
+            Node node = new Node();
+            node.exact = exact;
+            node.wildcard = wildcard;
+            if (!children.isEmpty()) {
+                // TreeMap iterates in key order, which keeps the keys sorted for binary search
+                List<Character> keys = new ArrayList<>(children.keySet());
+                node.keys = new char[keys.size()];
+                node.children = new Node[keys.size()];
+                for (int i = 0; i < keys.size(); i++) {
+                    node.keys[i] = keys.get(i);
+                    node.children[i] = children.get(keys.get(i)).build();
+                }
+            }
+            return node;
+        }
+    }
+}
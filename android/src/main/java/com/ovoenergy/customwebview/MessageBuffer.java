@@ -0,0 +1,129 @@
+package com.ovoenergy.customwebview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bounded buffer for messages posted by the page, handed to JS in batches.
+ *
+ * Only one batch is in flight at a time: the next one is held back until JS acknowledges the
+ * previous one (or the acknowledgement times out), so a page that posts faster than JS can handle
+ * them fills this buffer instead of the React event queue. Once the buffer is full further messages
+ * are dropped, and the number dropped is reported with the next batch. Thread-safe.
+ */
+final class MessageBuffer {
+
+    static final int DEFAULT_CAPACITY = 1000;
+    static final int DEFAULT_BATCH_SIZE = 100;
+    static final long DEFAULT_ACK_TIMEOUT_MS = 1000;
+
+    /**
+     * What the caller of {@link #offer} has to do.
+     */
+    enum Offer {
+        // Added, a flush is already scheduled
+        QUEUED,
+        // Added, schedule a flush for the next frame
+        SCHEDULE_FLUSH,
+        // Added and a whole batch is waiting, flush without waiting for the next frame
+        FLUSH_NOW,
+        // Buffer full, counted
+        DROPPED
+    }
+
+    static final class Batch {
+        final List<String> messages;
+        final int dropped;
+
+        Batch(List<String> messages, int dropped) {
+            this.messages = messages;
+            this.dropped = dropped;
+        }
+    }
+
+    private final int capacity;
+    private final int batchSize;
+    private final long ackTimeoutMs;
+
+    // All guarded by this
+    private final ArrayList<String> pending = new ArrayList<>();
+    private int dropped;
+    private boolean flushScheduled;
+    // When the batch in flight was handed out, -1 when none is
+    private long inFlightSince = -1;
+
+    MessageBuffer(int capacity, int batchSize, long ackTimeoutMs) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.ackTimeoutMs = ackTimeoutMs;
+    }
+
+    synchronized Offer offer(String message) {
+        if (pending.size() >= capacity) {
+            dropped++;
+            return Offer.DROPPED;
+        }
+        pending.add(message);
+        if (pending.size() == batchSize && inFlightSince < 0) {
+            flushScheduled = true;
+            return Offer.FLUSH_NOW;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            return Offer.SCHEDULE_FLUSH;
+        }
+        return Offer.QUEUED;
+    }
+
+    /**
+     * Takes the next batch of at most the batch size.
+     *
+     * @param now current time in ms, used for the acknowledgement timeout
+     * @return null when there is nothing to send, or the previous batch was not acknowledged yet
+     */
+    synchronized Batch drain(long now) {
+        if (pending.isEmpty() && dropped == 0) {
+            return null;
+        }
+        if (inFlightSince >= 0 && now - inFlightSince < ackTimeoutMs) {
+            return null;
+        }
+
+        int count = Math.min(batchSize, pending.size());
+        List<String> head = pending.subList(0, count);
+        List<String> messages = count == 0 ? Collections.<String>emptyList() : new ArrayList<>(head);
+        head.clear();
+        Batch batch = new Batch(messages, dropped);
+        dropped = 0;
+        inFlightSince = now;
+        return batch;
+    }
+
+    /**
+     * Called after {@link #drain}.
+     *
+     * @return whether messages are left over, the caller should then flush again on the next frame
+     */
+    synchronized boolean rescheduleIfPending() {
+        flushScheduled = !pending.isEmpty() || dropped > 0;
+        return flushScheduled;
+    }
+
+    /**
+     * JS handled the batch in flight.
+     */
+    synchronized void acknowledge() {
+        inFlightSince = -1;
+    }
+
+    synchronized void clear() {
+        pending.clear();
+        dropped = 0;
+        flushScheduled = false;
+        inFlightSince = -1;
+    }
+}
@@ -0,0 +1,13 @@
+package com.ovoenergy.customwebview;
+
+/**
+ * Where a top level navigation should be handled.
+ */
+enum NavigationRoute {
+    /** Load the url inside the WebView */
+    INTERNAL,
+    /** Open the url in a Chrome custom tab */
+    CUSTOM_TAB,
+    /** Hand the url off to whichever activity handles it */
+    EXTERNAL
+}
@@ -0,0 +1,85 @@
+package com.ovoenergy.customwebview;
+
+/**
+ * Native timestamps of the current navigation, see {@link PerformanceReporter}.
+ *
+ * A navigation runs from the first onPageStarted to the first onPageFinished after it. Starts
+ * reported again before it finished, as for redirects, keep the original start time, and later
+ * callbacks for a finished navigation are ignored. Not thread-safe.
+ */
+final class NavigationTiming {
+
+    static final long NONE = -1;
+
+    private String url;
+    private long startTime;
+    private long startedAt = NONE;
+    private long commitVisibleAt = NONE;
+    private long finishedAt = NONE;
+
+    /**
+     * @param now        current uptime in ms
+     * @param wallClock  current time in ms since the epoch, reported as the start time
+     */
+    void start(String url, long now, long wallClock) {
+        this.url = url;
+        if (isInProgress()) {
+            return;
+        }
+        startTime = wallClock;
+        startedAt = now;
+        commitVisibleAt = NONE;
+        finishedAt = NONE;
+    }
+
+    void commitVisible(long now) {
+        if (isInProgress() && commitVisibleAt == NONE) {
+            commitVisibleAt = now;
+        }
+    }
+
+    /**
+     * @return true the first time the navigation finished, when it has to be reported
+     */
+    boolean finish(String url, long now) {
+        if (!isInProgress()) {
+            return false;
+        }
+        this.url = url;
+        finishedAt = now;
+        return true;
+    }
+
+    void reset() {
+        url = null;
+        startedAt = NONE;
+        commitVisibleAt = NONE;
+        finishedAt = NONE;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return ms from the start until the new page was first drawn, or {@link #NONE}
+     */
+    long getCommitVisibleTime() {
+        return commitVisibleAt == NONE ? NONE : commitVisibleAt - startedAt;
+    }
+
+    /**
+     * @return ms from the start until the page finished loading, or {@link #NONE}
+     */
+    long getFinishTime() {
+        return finishedAt == NONE ? NONE : finishedAt - startedAt;
+    }
+
+    private boolean isInProgress() {
+        return startedAt != NONE && finishedAt == NONE;
+    }
+}
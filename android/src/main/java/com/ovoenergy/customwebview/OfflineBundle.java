@@ -0,0 +1,443 @@
+package com.ovoenergy.customwebview;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Web app packed in a zip file, served to the WebView from a virtual origin, see the `bundle`
+ * source.
+ *
+ * The archive is memory-mapped once and its central directory read into an index of entries, with
+ * the data offset and MIME type of each resolved up front. Serving an entry is then a lookup and a
+ * stream over the mapped bytes: no file is opened and nothing is copied. Stored entries are returned
+ * as they are, deflated ones are inflated while the WebView reads them. A pre-compressed
+ * {@code name.gz} is also indexed as {@code name}, and decompressed while it is read, unless the
+ * bundle has both. Zip64 archives are not supported.
+ *
+ * A mapped file that is truncated or rewritten in place crashes the process with SIGBUS on the next
+ * read, so {@link #get} maps a private copy that nothing else writes to. The copy is made once per
+ * version of the file and kept across launches. Instances are immutable and thread-safe.
+ */
+final class OfflineBundle {
+
+    static final String DEFAULT_ENTRY = "index.html";
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Names without the UTF-8 flag are in a legacy code page, ASCII names decode the same either way
+    private static final Charset LEGACY = Charset.forName("ISO-8859-1");
+
+    // Built once, bundles resolve the type of every entry when they are opened
+    private static final Map<String, String> MIME_TYPES = createMimeTypes();
+    // Bundles are shared by every WebView showing them, keyed by absolute path
+    private static final Map<String, OfflineBundle> sOpenBundles = new HashMap<>();
+
+    static final class Entry {
+        final String mimeType;
+        final int method;
+        final int dataOffset;
+        final int compressedSize;
+        // Of the stored file, for a gzipped entry that of the .gz file
+        final int size;
+        // Whether the data is a gzip file, served decompressed
+        final boolean gzipped;
+
+        Entry(String mimeType, int method, int dataOffset, int compressedSize, int size, boolean gzipped) {
+            this.mimeType = mimeType;
+            this.method = method;
+            this.dataOffset = dataOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.gzipped = gzipped;
+        }
+
+        boolean isText() {
+            return mimeType.startsWith("text/") || mimeType.endsWith("javascript") || mimeType.endsWith("json")
+                    || mimeType.endsWith("xml") || mimeType.endsWith("svg+xml");
+        }
+    }
+
+    private final File file;
+    private final long fileLength;
+    private final long fileModified;
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+
+    private OfflineBundle(File file, long fileLength, long fileModified, ByteBuffer buffer,
+                          Map<String, Entry> entries) {
+        this.file = file;
+        this.fileLength = fileLength;
+        this.fileModified = fileModified;
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Maps the archive and indexes its entries. The file must not be changed in place while the
+     * bundle is used.
+     *
+     * @throws IOException if the file cannot be read or is not a supported zip archive
+     */
+    static OfflineBundle open(File file) throws IOException {
+        return open(file, file, file.length(), file.lastModified());
+    }
+
+    /**
+     * @param mapped the file to map, {@code file} or a copy of it
+     */
+    private static OfflineBundle open(File mapped, File file, long fileLength, long fileModified)
+            throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mapped, "r");
+        ByteBuffer buffer;
+        try {
+            long length = randomAccessFile.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Bundle too large: " + file);
+            }
+            // The mapping stays valid after the file is closed
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            randomAccessFile.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return new OfflineBundle(file, fileLength, fileModified, buffer, readEntries(buffer));
+    }
+
+    /**
+     * Like {@link #open}, but maps a private copy of the file, so it may be changed in any way while
+     * shown, and reuses the bundle opened last for the same file unless it changed.
+     *
+     * @param copyDirectory where the copies are kept, only used by this method
+     */
+    static OfflineBundle get(File file, File copyDirectory) throws IOException {
+        String path = file.getAbsolutePath();
+        synchronized (sOpenBundles) {
+            OfflineBundle bundle = sOpenBundles.get(path);
+            if (bundle != null && !bundle.isStale()) {
+                return bundle;
+            }
+
+            long length = file.length();
+            long modified = file.lastModified();
+            bundle = open(copy(file, length, modified, copyDirectory), file, length, modified);
+            sOpenBundles.put(path, bundle);
+            return bundle;
+        }
+    }
+
+    /**
+     * Copies the file unless the copy of this version exists, and deletes copies of older versions.
+     * Those may still be mapped, which keeps them readable until they are unmapped.
+     */
+    private static File copy(File file, long length, long modified, File directory) throws IOException {
+        String prefix = UUID.nameUUIDFromBytes(file.getAbsolutePath().getBytes(UTF_8)) + "-";
+        File copy = new File(directory, prefix + length + "-" + modified + ".zip");
+        if (copy.isFile() && copy.length() == length) {
+            return copy;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File old : files) {
+                if (old.getName().startsWith(prefix)) {
+                    old.delete();
+                }
+            }
+        }
+
+        // Written next to the copy and renamed, so a copy is never seen half written
+        File temp = new File(directory, prefix + "tmp");
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                FileChannel source = in.getChannel();
+                long position = 0;
+                while (position < length) {
+                    long copied = source.transferTo(position, length - position, out.getChannel());
+                    if (copied <= 0) {
+                        break;
+                    }
+                    position += copied;
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (temp.length() != length || file.length() != length || file.lastModified() != modified
+                || !temp.renameTo(copy)) {
+            temp.delete();
+            throw new IOException("Bundle changed while it was copied: " + file);
+        }
+        return copy;
+    }
+
+    /**
+     * Whether the file changed since it was opened, in which case it has to be opened again.
+     */
+    boolean isStale() {
+        return file.length() != fileLength || file.lastModified() != fileModified;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param path path part of a url, with or without the leading '/', percent-encoded
+     * @return the entry for the path, or null when there is none. Directories are served their
+     * index.html.
+     */
+    Entry find(String path) {
+        int end = path.length();
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        int start = 0;
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        String name = decode(path.substring(start, end));
+        if (name.isEmpty() || name.endsWith("/")) {
+            name += DEFAULT_ENTRY;
+        }
+
+        return entries.get(name);
+    }
+
+    /**
+     * @return the uncompressed content of the entry
+     */
+    InputStream open(Entry entry) throws IOException {
+        ByteBuffer data = buffer.duplicate();
+        data.limit(entry.dataOffset + entry.compressedSize).position(entry.dataOffset);
+        InputStream in = new ByteBufferInputStream(data);
+        if (entry.method == METHOD_DEFLATED) {
+            final Inflater inflater = new Inflater(true);
+            in = new InflaterInputStream(in, inflater, 8 * 1024) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    // Inflater holds native memory until ended
+                    inflater.end();
+                }
+            };
+        }
+        return entry.gzipped ? new GZIPInputStream(in, 8 * 1024) : in;
+    }
+
+    static String getMimeType(String name) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (dot <= slash) {
+            return DEFAULT_MIME_TYPE;
+        }
+        String mimeType = MIME_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.US));
+        return mimeType != null ? mimeType : DEFAULT_MIME_TYPE;
+    }
+
+    private static Map<String, Entry> readEntries(ByteBuffer buffer) throws IOException {
+        int end = findEndOfCentralDirectory(buffer);
+        int count = buffer.getShort(end + 10) & 0xFFFF;
+        long directoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new IOException("Zip64 bundles are not supported");
+        }
+
+        Map<String, Entry> entries = new HashMap<>(count * 2);
+        int position = (int) directoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_DIRECTORY_ENTRY_SIZE > buffer.limit()
+                    || buffer.getInt(position) != CENTRAL_DIRECTORY_ENTRY) {
+                throw new IOException("Corrupt zip central directory");
+            }
+            int flags = buffer.getShort(position + 8) & 0xFFFF;
+            int method = buffer.getShort(position + 10) & 0xFFFF;
+            long compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+            String name = readString(buffer, position + CENTRAL_DIRECTORY_ENTRY_SIZE, nameLength,
+                    (flags & FLAG_UTF8) != 0 ? UTF_8 : LEGACY);
+            position += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/")) {
+                continue;
+            }
+            if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+                throw new IOException("Unsupported compression method " + method + " for " + name);
+            }
+            int local = (int) localHeaderOffset;
+            if (local + LOCAL_HEADER_SIZE > buffer.limit() || buffer.getInt(local) != LOCAL_HEADER) {
+                throw new IOException("Corrupt zip entry " + name);
+            }
+            // The local extra field may differ from the central one
+            long dataOffset = local + LOCAL_HEADER_SIZE + (buffer.getShort(local + 26) & 0xFFFF)
+                    + (buffer.getShort(local + 28) & 0xFFFF);
+            if (dataOffset + compressedSize > buffer.limit()) {
+                throw new IOException("Truncated zip entry " + name);
+            }
+            entries.put(name, new Entry(getMimeType(name), method, (int) dataOffset, (int) compressedSize,
+                    (int) Math.min(size, Integer.MAX_VALUE), false));
+        }
+
+        // Pre-compressed assets are also served under their own name
+        Map<String, Entry> gzipped = new HashMap<>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            String name = item.getKey();
+            if (name.endsWith(GZIP_SUFFIX) && name.length() > GZIP_SUFFIX.length()) {
+                String original = name.substring(0, name.length() - GZIP_SUFFIX.length());
+                Entry entry = item.getValue();
+                if (!entries.containsKey(original)) {
+                    gzipped.put(original, new Entry(getMimeType(original), entry.method, entry.dataOffset,
+                            entry.compressedSize, entry.size, true));
+                }
+            }
+        }
+        entries.putAll(gzipped);
+        return Collections.unmodifiableMap(entries);
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) throws IOException {
+        int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int position = last; position >= first; position--) {
+            if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+                return position;
+            }
+        }
+        throw new IOException("Not a zip file");
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    private static String decode(String path) {
+        if (path.indexOf('%') < 0) {
+            return path;
+        }
+        try {
+            // URLDecoder is for forms, keep '+' as it is
+            return URLDecoder.decode(path.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return path;
+        }
+    }
+
+    private static Map<String, String> createMimeTypes() {
+        Map<String, String> types = new HashMap<>();
+        types.put("html", "text/html");
+        types.put("htm", "text/html");
+        types.put("css", "text/css");
+        types.put("js", "application/javascript");
+        types.put("mjs", "application/javascript");
+        types.put("json", "application/json");
+        types.put("map", "application/json");
+        types.put("webmanifest", "application/manifest+json");
+        types.put("txt", "text/plain");
+        types.put("xml", "application/xml");
+        types.put("svg", "image/svg+xml");
+        types.put("png", "image/png");
+        types.put("jpg", "image/jpeg");
+        types.put("jpeg", "image/jpeg");
+        types.put("gif", "image/gif");
+        types.put("webp", "image/webp");
+        types.put("ico", "image/x-icon");
+        types.put("woff", "font/woff");
+        types.put("woff2", "font/woff2");
+        types.put("ttf", "font/ttf");
+        types.put("otf", "font/otf");
+        types.put("wasm", "application/wasm");
+        types.put("mp3", "audio/mpeg");
+        types.put("mp4", "video/mp4");
+        types.put("webm", "video/webm");
+        types.put("pdf", "application/pdf");
+        return Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Reads a mapped region without copying it first.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) {
+            if (count == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(count, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.ovoenergy.customwebview;
+
+import android.os.Build;
+import android.view.Choreographer;
+import android.webkit.WebView;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delivers messages sent to the page with the postMessage command, batched per frame.
+ *
+ * Messages posted during a frame are delivered together by one script on the next frame. The
+ * function that turns them into `message` events on `document` is installed by the first batch that
+ * finds it missing, so native code does not have to know when the document changed. Only used from
+ * the UI thread.
+ */
+class OutgoingMessageQueue implements Choreographer.FrameCallback {
+
+    private static final String RECEIVER = "window.__REACT_WEB_VIEW_RECEIVE";
+    // Evaluates to the receiver, installing it first on a document without one
+    private static final String RECEIVER_SCRIPT = "(" + RECEIVER + " || (" + RECEIVER + " = function(messages) {" +
+            "for (var i = 0; i < messages.length; i++) {" +
+            "var event;" +
+            "var data = {data: messages[i]};" +
+            "try {" +
+            "event = new MessageEvent('message', data);" +
+            "} catch (e) {" +
+            "event = document.createEvent('MessageEvent');" +
+            "event.initMessageEvent('message', true, true, data.data, data.origin, data.lastEventId, data.source);" +
+            "}" +
+            "document.dispatchEvent(event);" +
+            "}" +
+            "}))";
+
+    private final WebView webView;
+    private final List<String> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    OutgoingMessageQueue(WebView webView) {
+        this.webView = webView;
+    }
+
+    void post(String message) {
+        pending.add(message);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    void clear() {
+        pending.clear();
+        if (flushScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            flushScheduled = false;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        String script = buildScript(pending);
+        pending.clear();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            webView.evaluateJavascript(script, null);
+        } else {
+            webView.loadUrl("javascript:" + script);
+        }
+    }
+
+    private static String buildScript(List<String> messages) {
+        int length = RECEIVER_SCRIPT.length() + 4;
+        for (String message : messages) {
+            length += message.length() + 3;
+        }
+        StringBuilder script = new StringBuilder(length);
+        script.append(RECEIVER_SCRIPT).append("([");
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                script.append(',');
+            }
+            appendJsString(script, messages.get(i));
+        }
+        return script.append("]);").toString();
+    }
+
+    private static void appendJsString(StringBuilder script, String value) {
+        String quoted = JSONObject.quote(value);
+        // Valid in JSON but not in string literals of older JavaScript engines
+        if (quoted.indexOf('\u2028') >= 0 || quoted.indexOf('\u2029') >= 0) {
+            quoted = quoted.replace("\u2028", "\\u2028").replace("\u2029", "\\u2029");
+        }
+        script.append(quoted);
+    }
+}
@@ -0,0 +1,214 @@
+package com.ovoenergy.customwebview;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * Emits one `topPerformanceReport` event per navigation while the onPerformanceReport prop is set.
+ *
+ * The native side records when the navigation started, when the new page was first drawn (API 23+)
+ * and when it finished loading, see {@link NavigationTiming}. Once it finished, a small script
+ * observes the page's paint timings, and a second later another one collects them together with its
+ * Navigation Timing. The page metrics need API 19+ and JavaScript, without them the report only has
+ * the native timings. Does nothing while disabled. Only used from the UI thread.
+ */
+class PerformanceReporter {
+
+    static final String EVENT_PERFORMANCE_REPORT = "topPerformanceReport";
+
+    // Largest contentful paint keeps changing while the page renders
+    private static final long COLLECT_DELAY_MS = 1000;
+
+    private static final String METRICS = "window.__REACT_WEB_VIEW_PERFORMANCE";
+
+    // Buffered entries include the paints from before the script ran
+    private static final String OBSERVE_SCRIPT = "(function() {" +
+            "if (" + METRICS + " || !window.PerformanceObserver) return;" +
+            "var metrics = " + METRICS + " = {};" +
+            "try {" +
+            "new PerformanceObserver(function(list) {" +
+            "list.getEntries().forEach(function(entry) {" +
+            "if (entry.name === 'first-contentful-paint') metrics.fcp = entry.startTime;" +
+            "});" +
+            "}).observe({type: 'paint', buffered: true});" +
+            "} catch (e) {}" +
+            "try {" +
+            "new PerformanceObserver(function(list) {" +
+            "var entries = list.getEntries();" +
+            "if (entries.length) metrics.lcp = entries[entries.length - 1].startTime;" +
+            "}).observe({type: 'largest-contentful-paint', buffered: true});" +
+            "} catch (e) {}" +
+            "})();";
+
+    // Times are ms since the page's navigation start, Navigation Timing level 1 as a fallback
+    private static final String COLLECT_SCRIPT = "(function() {" +
+            "var metrics = " + METRICS + " || {};" +
+            "var report = {};" +
+            "var performance = window.performance;" +
+            "if (!performance) return report;" +
+            "if (metrics.fcp === undefined && performance.getEntriesByName) {" +
+            "var paint = performance.getEntriesByName('first-contentful-paint')[0];" +
+            "if (paint) metrics.fcp = paint.startTime;" +
+            "}" +
+            "if (metrics.fcp !== undefined) report.firstContentfulPaint = metrics.fcp;" +
+            "if (metrics.lcp !== undefined) report.largestContentfulPaint = metrics.lcp;" +
+            "var entry = performance.getEntriesByType && performance.getEntriesByType('navigation')[0];" +
+            "var origin = 0;" +
+            "if (!entry && performance.timing) {" +
+            "entry = performance.timing;" +
+            "origin = entry.navigationStart;" +
+            "}" +
+            "if (entry) {" +
+            "report.navigationTiming = {};" +
+            "['fetchStart', 'domainLookupStart', 'domainLookupEnd', 'connectStart', 'connectEnd'," +
+            " 'requestStart', 'responseStart', 'responseEnd', 'domInteractive'," +
+            " 'domContentLoadedEventEnd', 'loadEventEnd'].forEach(function(name) {" +
+            "if (entry[name] > 0) report.navigationTiming[name] = entry[name] - origin;" +
+            "});" +
+            "}" +
+            "return report;" +
+            "})();";
+
+    private final WebView webView;
+    private final NavigationTiming timing = new NavigationTiming();
+    private final Runnable collectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            collect();
+        }
+    };
+    private boolean enabled;
+    // Set while the page metrics of a finished navigation are awaited
+    private boolean collecting;
+    // Tells the answer of a collect script apart from a report that was already sent
+    private int reportCount;
+
+    PerformanceReporter(WebView webView) {
+        this.webView = webView;
+    }
+
+    void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) {
+            return;
+        }
+
+        this.enabled = enabled;
+        if (!enabled) {
+            webView.removeCallbacks(collectRunnable);
+            collecting = false;
+            reportCount++;
+            timing.reset();
+        }
+    }
+
+    void onPageStarted(String url) {
+        if (!enabled) {
+            return;
+        }
+        if (collecting) {
+            // The page is going away, its metrics with it
+            webView.removeCallbacks(collectRunnable);
+            report(null);
+        }
+        timing.start(url, SystemClock.uptimeMillis(), System.currentTimeMillis());
+    }
+
+    void onPageCommitVisible() {
+        if (enabled) {
+            timing.commitVisible(SystemClock.uptimeMillis());
+        }
+    }
+
+    /**
+     * @param failed whether the page failed to load, then there are no page metrics to collect
+     */
+    void onPageFinished(String url, boolean failed) {
+        if (!enabled || !timing.finish(url, SystemClock.uptimeMillis())) {
+            return;
+        }
+
+        collecting = true;
+        if (failed
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT
+                || !webView.getSettings().getJavaScriptEnabled()) {
+            report(null);
+            return;
+        }
+        webView.evaluateJavascript(OBSERVE_SCRIPT, null);
+        webView.postDelayed(collectRunnable, COLLECT_DELAY_MS);
+    }
+
+    private void collect() {
+        final int expectedReportCount = reportCount;
+        webView.evaluateJavascript(COLLECT_SCRIPT, new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                if (collecting && reportCount == expectedReportCount) {
+                    report(value);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param pageMetrics JSON returned by the collect script, null when there is none
+     */
+    private void report(@Nullable String pageMetrics) {
+        collecting = false;
+        reportCount++;
+
+        WritableMap event = Arguments.createMap();
+        event.putDouble("target", webView.getId());
+        event.putString("url", timing.getUrl());
+        event.putDouble("startTime", timing.getStartTime());
+        if (timing.getCommitVisibleTime() != NavigationTiming.NONE) {
+            event.putDouble("pageCommitVisible", timing.getCommitVisibleTime());
+        }
+        event.putDouble("pageFinished", timing.getFinishTime());
+        putPageMetrics(event, pageMetrics);
+
+        CustomWebViewEvent.dispatch((ReactContext) webView.getContext(),
+                new CustomWebViewEvent(webView.getId(), EVENT_PERFORMANCE_REPORT, event, false));
+    }
+
+    private static void putPageMetrics(WritableMap event, @Nullable String pageMetrics) {
+        if (pageMetrics == null || !pageMetrics.startsWith("{")) {
+            // "null" when the script failed
+            return;
+        }
+
+        try {
+            JSONObject metrics = new JSONObject(pageMetrics);
+            if (metrics.has("firstContentfulPaint")) {
+                event.putDouble("firstContentfulPaint", metrics.getDouble("firstContentfulPaint"));
+            }
+            if (metrics.has("largestContentfulPaint")) {
+                event.putDouble("largestContentfulPaint", metrics.getDouble("largestContentfulPaint"));
+            }
+            JSONObject navigation = metrics.optJSONObject("navigationTiming");
+            if (navigation != null) {
+                WritableMap navigationTiming = Arguments.createMap();
+                Iterator<String> names = navigation.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    navigationTiming.putDouble(name, navigation.getDouble(name));
+                }
+                event.putMap("navigationTiming", navigationTiming);
+            }
+        } catch (JSONException e) {
+            // Reported with the native timings only
+        }
+    }
+}
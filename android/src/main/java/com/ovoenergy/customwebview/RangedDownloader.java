@@ -0,0 +1,472 @@
+package com.ovoenergy.customwebview;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a file over several parallel HTTP range requests, each writing its part of a file that
+ * is allocated up front through positional {@link FileChannel} writes.
+ *
+ * Progress is checkpointed to a small state file next to the destination, so a download that was
+ * interrupted (network loss, process death) continues from the last checkpoint when it is started
+ * again with the same url and destination. The state is only reused while the server reports the
+ * same ETag or Last-Modified date, otherwise the download starts over.
+ *
+ * Servers that do not support ranges, and files too small to be worth splitting, are left to the
+ * caller, see {@link #download}.
+ */
+final class RangedDownloader {
+
+    interface ProgressListener {
+        /**
+         * Called from the download threads as bytes are written.
+         */
+        void onProgress(long bytesDownloaded, long totalBytes);
+    }
+
+    static final int DEFAULT_CONNECTIONS = 4;
+    // Below this a single connection is about as fast
+    static final long DEFAULT_MIN_SPLIT_SIZE = 8 * 1024 * 1024;
+
+    static final String STATE_SUFFIX = ".ranges";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long CHECKPOINT_BYTES = 4 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private final ExecutorService executor;
+    private final int connections;
+    private final long minSplitSize;
+    // Set by a successful download
+    private String etag;
+    private String lastModified;
+
+    /**
+     * @param executor runs one task per range, it needs {@code connections} threads to download
+     *                 every range at once
+     */
+    RangedDownloader(ExecutorService executor, int connections, long minSplitSize) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be at least 1, got " + connections);
+        }
+        this.executor = executor;
+        this.connections = connections;
+        this.minSplitSize = minSplitSize;
+    }
+
+    /**
+     * Downloads {@code url} to {@code destination}, blocking until it is complete.
+     *
+     * @param headers sent with every request, e.g. the page's Cookie and User-Agent
+     * @param listener may be null
+     * @return false, without writing anything, when the server does not support range requests or
+     * the file is smaller than the split size
+     * @throws IOException when the download failed. Progress so far is kept, calling again with the
+     *                     same url and destination resumes it
+     */
+    boolean download(String url, Map<String, String> headers, File destination, ProgressListener listener)
+            throws IOException {
+        Probe probe = probe(url, headers);
+        if (probe == null || probe.totalBytes < minSplitSize) {
+            return false;
+        }
+
+        File stateFile = new File(destination.getPath() + STATE_SUFFIX);
+        Range[] ranges = loadState(stateFile, url, probe, destination);
+        if (ranges == null) {
+            ranges = split(probe.totalBytes, connections);
+            if (destination.exists() && !destination.delete()) {
+                throw new IOException("Could not replace " + destination);
+            }
+        }
+
+        RandomAccessFile file = new RandomAccessFile(destination, "rw");
+        try {
+            if (file.length() != probe.totalBytes) {
+                file.setLength(probe.totalBytes);
+            }
+            Transfer transfer = new Transfer(url, probe, headers, ranges, file.getChannel(), stateFile, listener);
+            transfer.run();
+            file.getChannel().force(true);
+        } finally {
+            file.close();
+        }
+
+        if (stateFile.exists() && !stateFile.delete()) {
+            throw new IOException("Could not delete " + stateFile);
+        }
+        if (probe.validator != null) {
+            // If-Range made sure every byte is from the version these describe
+            etag = probe.etag;
+            lastModified = probe.lastModified;
+        }
+        return true;
+    }
+
+    /**
+     * @return the strong ETag of the file {@link #download} wrote, or null
+     */
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return the Last-Modified date of the file {@link #download} wrote, or null
+     */
+    String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Asks for the first byte only: a 206 answer confirms range support and carries the total size.
+     */
+    private static Probe probe(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = open(url, headers);
+        try {
+            connection.setRequestProperty("Range", "bytes=0-0");
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL
+                    || "none".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"))) {
+                return null;
+            }
+            long totalBytes = parseTotalBytes(connection.getHeaderField("Content-Range"));
+            if (totalBytes <= 0) {
+                return null;
+            }
+
+            // Weak ETags can't be used in If-Range
+            String etag = connection.getHeaderField("ETag");
+            if (etag != null && etag.startsWith("W/")) {
+                etag = null;
+            }
+            // Ranges are requested from where redirects ended up
+            return new Probe(connection.getURL().toString(), totalBytes, etag,
+                    connection.getHeaderField("Last-Modified"));
+        } finally {
+            close(connection);
+        }
+    }
+
+    static long parseTotalBytes(String contentRange) {
+        // bytes 0-0/12345
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || !contentRange.regionMatches(true, 0, "bytes ", 0, 6)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            // "*" when the length is unknown
+            return -1;
+        }
+    }
+
+    static Range[] split(long totalBytes, int count) {
+        long rangeSize = (totalBytes + count - 1) / count;
+        List<Range> ranges = new ArrayList<>(count);
+        for (long start = 0; start < totalBytes; start += rangeSize) {
+            ranges.add(new Range(start, Math.min(totalBytes, start + rangeSize) - 1, start));
+        }
+        return ranges.toArray(new Range[ranges.size()]);
+    }
+
+    private static Range[] loadState(File stateFile, String url, Probe probe, File destination) {
+        if (!stateFile.exists()) {
+            return null;
+        }
+        Properties state = new Properties();
+        try {
+            InputStream in = new FileInputStream(stateFile);
+            try {
+                state.load(in);
+            } finally {
+                in.close();
+            }
+
+            // Without a validator there is no way to tell whether the file changed in between
+            if (probe.validator == null
+                    || !url.equals(state.getProperty("url"))
+                    || !probe.validator.equals(state.getProperty("validator"))
+                    || probe.totalBytes != Long.parseLong(state.getProperty("totalBytes"))
+                    || destination.length() != probe.totalBytes) {
+                return null;
+            }
+
+            int count = Integer.parseInt(state.getProperty("ranges"));
+            Range[] ranges = new Range[count];
+            for (int i = 0; i < count; i++) {
+                String[] values = state.getProperty("range." + i).split(",");
+                ranges[i] = new Range(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]));
+            }
+            return ranges;
+        } catch (IOException | RuntimeException e) {
+            // Unreadable state, start over
+            return null;
+        }
+    }
+
+    private static HttpURLConnection open(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getValue() != null) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        // Offsets refer to the bytes on the wire, transparent decompression would break them
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+
+    private static void close(HttpURLConnection connection) {
+        try {
+            InputStream in = connection.getInputStream();
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to read
+        }
+        connection.disconnect();
+    }
+
+    /**
+     * Bytes {@code start} to {@code end}, both inclusive. {@code offset} is the next byte to fetch.
+     */
+    static final class Range {
+        final long start;
+        final long end;
+        volatile long offset;
+
+        Range(long start, long end, long offset) {
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+
+        boolean isDone() {
+            return offset > end;
+        }
+    }
+
+    private static final class Probe {
+        final String url;
+        final long totalBytes;
+        final String etag;
+        final String lastModified;
+        // Sent as If-Range, so every range comes from the same version of the file
+        final String validator;
+
+        Probe(String url, long totalBytes, String etag, String lastModified) {
+            this.url = url;
+            this.totalBytes = totalBytes;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validator = etag != null ? etag : lastModified;
+        }
+    }
+
+    private final class Transfer {
+        private final String originalUrl;
+        private final Probe probe;
+        private final Map<String, String> headers;
+        private final Range[] ranges;
+        private final FileChannel channel;
+        private final File stateFile;
+        private final ProgressListener listener;
+        private final AtomicLong bytesDownloaded = new AtomicLong();
+        private final AtomicLong bytesSinceCheckpoint = new AtomicLong();
+        private volatile boolean cancelled;
+        // Set when the server sent a different file, the saved progress is useless then
+        private volatile boolean stale;
+
+        Transfer(String originalUrl, Probe probe, Map<String, String> headers, Range[] ranges,
+                 FileChannel channel, File stateFile, ProgressListener listener) {
+            this.originalUrl = originalUrl;
+            this.probe = probe;
+            this.headers = headers;
+            this.ranges = ranges;
+            this.channel = channel;
+            this.stateFile = stateFile;
+            this.listener = listener;
+            for (Range range : ranges) {
+                bytesDownloaded.addAndGet(range.offset - range.start);
+            }
+        }
+
+        void run() throws IOException {
+            List<Future<Void>> futures = new ArrayList<>(ranges.length);
+            for (final Range range : ranges) {
+                if (range.isDone()) {
+                    continue;
+                }
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        fetch(range);
+                        return null;
+                    }
+                }));
+            }
+
+            IOException failure = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    cancelled = true;
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    Thread.currentThread().interrupt();
+                    if (failure == null) {
+                        failure = new InterruptedIOException("Download interrupted");
+                    }
+                }
+            }
+
+            if (failure != null) {
+                if (stale) {
+                    stateFile.delete();
+                } else {
+                    checkpoint();
+                }
+                throw failure;
+            }
+        }
+
+        private void fetch(Range range) throws IOException {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    fetchOnce(range);
+                    return;
+                } catch (IOException e) {
+                    if (cancelled || stale || attempt >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private void fetchOnce(Range range) throws IOException {
+            if (range.isDone()) {
+                return;
+            }
+            HttpURLConnection connection = open(probe.url, headers);
+            try {
+                connection.setRequestProperty("Range", "bytes=" + range.offset + "-" + range.end);
+                if (probe.validator != null) {
+                    // The server answers with the whole (new) file if it changed
+                    connection.setRequestProperty("If-Range", probe.validator);
+                }
+                int code = connection.getResponseCode();
+                if (code != HttpURLConnection.HTTP_PARTIAL) {
+                    stale = code == HttpURLConnection.HTTP_OK;
+                    throw new IOException("Expected a partial response for " + originalUrl + ", got " + code);
+                }
+
+                InputStream in = connection.getInputStream();
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                    long offset = range.offset;
+                    while (offset <= range.end) {
+                        if (cancelled) {
+                            throw new InterruptedIOException("Download cancelled");
+                        }
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, range.end - offset + 1));
+                        if (read < 0) {
+                            throw new EOFException("Connection closed at byte " + offset + " of " + originalUrl);
+                        }
+
+                        byteBuffer.clear();
+                        byteBuffer.limit(read);
+                        long position = offset;
+                        while (byteBuffer.hasRemaining()) {
+                            position += channel.write(byteBuffer, position);
+                        }
+                        offset = position;
+                        range.offset = offset;
+                        onBytesWritten(read);
+                    }
+                } finally {
+                    in.close();
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        private void onBytesWritten(int count) throws IOException {
+            long downloaded = bytesDownloaded.addAndGet(count);
+            if (listener != null) {
+                listener.onProgress(downloaded, probe.totalBytes);
+            }
+            if (bytesSinceCheckpoint.addAndGet(count) >= CHECKPOINT_BYTES) {
+                bytesSinceCheckpoint.set(0);
+                checkpoint();
+            }
+        }
+
+        /**
+         * Saves the offsets reached so far. They are read before the file is synced, so the saved
+         * state never claims bytes that are not on disk yet.
+         */
+        private synchronized void checkpoint() throws IOException {
+            Properties state = new Properties();
+            state.setProperty("url", originalUrl);
+            if (probe.validator != null) {
+                state.setProperty("validator", probe.validator);
+            }
+            state.setProperty("totalBytes", String.valueOf(probe.totalBytes));
+            state.setProperty("ranges", String.valueOf(ranges.length));
+            for (int i = 0; i < ranges.length; i++) {
+                Range range = ranges[i];
+                state.setProperty("range." + i, range.start + "," + range.end + "," + range.offset);
+            }
+
+            if (!channel.isOpen()) {
+                return;
+            }
+            channel.force(false);
+
+            File temp = new File(stateFile.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                state.store(out, null);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(stateFile)) {
+                throw new IOException("Could not save " + stateFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.ovoenergy.customwebview;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Size-bounded disk cache of responses the WebView requested, keyed by url, see
+ * {@link ResponseCacheRules}.
+ *
+ * Bodies are stored one file each and are never held in memory: a response is cached by reading it
+ * through the stream returned from {@link #store}, and a cached one is handed out as a stream over
+ * its file. The index of entries lives in memory and is written to a small binary file whenever an
+ * entry is added or removed, least recently used first. Once the bodies exceed the size limit the
+ * least recently used entries are evicted. Thread-safe.
+ */
+final class ResponseCache {
+
+    static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+    private static final int VERSION = 1;
+    private static final String INDEX_FILE = "index";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * A cached response. The caller owns the body and has to close it.
+     */
+    static final class Response {
+        final String mimeType;
+        final String encoding;
+        final Map<String, String> headers;
+        final InputStream body;
+
+        Response(String mimeType, String encoding, Map<String, String> headers, InputStream body) {
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+
+    // All guarded by this. Entries are loaded on first use, access ordered so the least recently
+    // used url goes first.
+    private Map<String, Entry> entries;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    ResponseCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param now current time in ms, entries that expired by then are dropped
+     * @return the cached response for the url, or null on a miss
+     */
+    synchronized Response get(String url, long now) {
+        Entry entry = getEntries().get(url);
+        if (entry != null && entry.expiresAt <= now) {
+            removeEntry(url);
+            entry = null;
+        }
+
+        InputStream body = null;
+        if (entry != null) {
+            try {
+                body = new FileInputStream(new File(directory, entry.fileName));
+            } catch (IOException e) {
+                // Deleted behind our back
+                removeEntry(url);
+            }
+        }
+        if (body == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new Response(entry.mimeType, entry.encoding, entry.headers, body);
+    }
+
+    /**
+     * Whether there is an entry for the url that has not expired. Does not count as a hit or miss.
+     */
+    synchronized boolean contains(String url, long now) {
+        Entry entry = getEntries().get(url);
+        return entry != null && entry.expiresAt > now;
+    }
+
+    /**
+     * Caches a response while it is read. The entry is only added once the returned stream has
+     * been read to the end, a stream closed early or failing leaves the cache unchanged.
+     *
+     * @param expiresAt time in ms after which the entry is dropped
+     * @return a stream returning the same bytes as {@code body}
+     */
+    InputStream store(String url, String mimeType, String encoding, Map<String, String> headers, long expiresAt,
+                      InputStream body) {
+        synchronized (this) {
+            getEntries();
+        }
+        File temp = new File(directory, UUID.randomUUID().toString() + TEMP_SUFFIX);
+        OutputStream out;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+        } catch (IOException e) {
+            // Served without caching
+            return body;
+        }
+        Entry entry = new Entry(mimeType, encoding, Collections.unmodifiableMap(headers), expiresAt,
+                temp.getName().substring(0, temp.getName().length() - TEMP_SUFFIX.length()), 0);
+        return new CachingInputStream(body, url, entry, temp, out);
+    }
+
+    synchronized void remove(String url) {
+        if (getEntries().containsKey(url)) {
+            removeEntry(url);
+        }
+    }
+
+    synchronized void clear() {
+        for (Entry entry : getEntries().values()) {
+            new File(directory, entry.fileName).delete();
+        }
+        entries.clear();
+        totalBytes = 0;
+        saveQuietly();
+    }
+
+    synchronized int size() {
+        return getEntries().size();
+    }
+
+    synchronized long getTotalBytes() {
+        getEntries();
+        return totalBytes;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseCache{entries=" + getEntries().size() + ", bytes=" + totalBytes
+                + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+
+    private synchronized void commit(String url, Entry entry) {
+        File file = new File(directory, entry.fileName);
+        if (entry.length > maxBytes) {
+            file.delete();
+            return;
+        }
+
+        Entry previous = getEntries().put(url, entry);
+        if (previous != null) {
+            totalBytes -= previous.length;
+            new File(directory, previous.fileName).delete();
+        }
+        totalBytes += entry.length;
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= eldest.length;
+            new File(directory, eldest.fileName).delete();
+        }
+        saveQuietly();
+    }
+
+    // Guarded by this
+    private void removeEntry(String url) {
+        Entry entry = entries.remove(url);
+        totalBytes -= entry.length;
+        new File(directory, entry.fileName).delete();
+        saveQuietly();
+    }
+
+    // Guarded by this
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<>(16, 0.75f, true);
+            directory.mkdirs();
+            try {
+                load();
+            } catch (IOException e) {
+                // Unreadable index, start over
+                entries.clear();
+                totalBytes = 0;
+            }
+            deleteUnindexedFiles();
+        }
+        return entries;
+    }
+
+    // Guarded by this
+    private void load() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                String mimeType = in.readUTF();
+                String encoding = readNullable(in);
+                int headerCount = in.readInt();
+                Map<String, String> headers = new LinkedHashMap<>(headerCount * 2);
+                for (int h = 0; h < headerCount; h++) {
+                    headers.put(in.readUTF(), in.readUTF());
+                }
+                Entry entry = new Entry(mimeType, encoding, Collections.unmodifiableMap(headers), in.readLong(),
+                        in.readUTF(), in.readLong());
+                entries.put(url, entry);
+                totalBytes += entry.length;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // Guarded by this
+    private void save() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        File temp = new File(directory, INDEX_FILE + TEMP_SUFFIX);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            // Least recently used first, so loading restores the same order
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                out.writeUTF(entry.mimeType);
+                writeNullable(out, entry.encoding);
+                out.writeInt(entry.headers.size());
+                for (Map.Entry<String, String> header : entry.headers.entrySet()) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(header.getValue());
+                }
+                out.writeLong(entry.expiresAt);
+                out.writeUTF(entry.fileName);
+                out.writeLong(entry.length);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(indexFile)) {
+            throw new IOException("Could not save " + indexFile);
+        }
+    }
+
+    // Guarded by this
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            // Kept in memory, saved again with the next change
+        }
+    }
+
+    // Guarded by this. Leftovers of a crash, or of bodies still being written when the app died.
+    private void deleteUnindexedFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> indexed = new HashSet<>(entries.size() * 2);
+        for (Entry entry : entries.values()) {
+            indexed.add(entry.fileName);
+        }
+        for (File file : files) {
+            if (!file.getName().equals(INDEX_FILE) && !indexed.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static final class Entry {
+        final String mimeType;
+        final String encoding;
+        final Map<String, String> headers;
+        final long expiresAt;
+        final String fileName;
+        final long length;
+
+        Entry(String mimeType, String encoding, Map<String, String> headers, long expiresAt, String fileName,
+              long length) {
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.expiresAt = expiresAt;
+            this.fileName = fileName;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Copies everything read to a temporary file, which becomes the cached body at the end of the
+     * stream.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+        private final String url;
+        private final Entry entry;
+        private final File temp;
+        // Null once the copy is committed or abandoned
+        private OutputStream out;
+        private long length;
+
+        CachingInputStream(InputStream in, String url, Entry entry, File temp, OutputStream out) {
+            super(in);
+            this.url = url;
+            this.entry = entry;
+            this.temp = temp;
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = in.read();
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            if (b < 0) {
+                finish();
+            } else if (out != null) {
+                try {
+                    out.write(b);
+                    length++;
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read;
+            try {
+                read = in.read(buffer, offset, count);
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            if (read < 0) {
+                finish();
+            } else if (out != null) {
+                try {
+                    out.write(buffer, offset, read);
+                    length += read;
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes would be missing from the copy
+            abandon();
+            return in.skip(count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void finish() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                abandon();
+                return;
+            }
+            out = null;
+            File file = new File(directory, entry.fileName);
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            commit(url, new Entry(entry.mimeType, entry.encoding, entry.headers, entry.expiresAt, entry.fileName,
+                    length));
+        }
+
+        private void abandon() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Deleted anyway
+            }
+            out = null;
+            temp.delete();
+        }
+    }
+}
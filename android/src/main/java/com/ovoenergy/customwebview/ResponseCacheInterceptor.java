@@ -0,0 +1,354 @@
+package com.ovoenergy.customwebview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebSettings;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.common.ReactConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers WebView sub-resource requests matching the `cachedResources` prop from the app's
+ * {@link ResponseCache}, and fills it on a miss.
+ *
+ * A miss is fetched here instead of by the WebView, with the WebView's cookies and user agent, and
+ * the body is cached while the WebView reads it. Cookies the server sets are handed back to the
+ * {@link CookieManager}. Called from the WebView's IO threads, API 21+ only since the request
+ * method and headers are needed.
+ *
+ * The same cache holds the responses of the prefetch command, see {@link #prefetch}. Those are
+ * fetched on a small background pool ahead of navigation. A prefetched page answers a single main
+ * frame request, since it was fetched with the cookies of that moment, while sub-resources answer
+ * any GET request for their url until they expire.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class ResponseCacheInterceptor {
+
+    private static final String DIRECTORY = "webview-responses";
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    static final long PREFETCH_TTL_MS = 5 * 60 * 1000;
+    private static final int PREFETCH_THREADS = 2;
+    private static final int PREFETCH_QUEUE_SIZE = 64;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // Urls prefetched into the cache, so requests for other urls skip the lookup
+    private static final Set<String> sPrefetchedUrls =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static long sMaxBytes = ResponseCache.DEFAULT_MAX_BYTES;
+    private static ResponseCacheInterceptor sInstance;
+
+    private final ResponseCache cache;
+    private final String defaultUserAgent;
+    private final Set<String> prefetchesInFlight =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Bounded both ways: at most two fetches at a time, and urls are dropped once the queue is full
+    private final ThreadPoolExecutor prefetchExecutor = new ThreadPoolExecutor(
+            PREFETCH_THREADS, PREFETCH_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(PREFETCH_QUEUE_SIZE),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "WebViewPrefetch");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private ResponseCacheInterceptor(ResponseCache cache, String defaultUserAgent) {
+        this.cache = cache;
+        this.defaultUserAgent = defaultUserAgent;
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    static synchronized ResponseCacheInterceptor getInstance(Context context) {
+        if (sInstance == null) {
+            Context applicationContext = context.getApplicationContext();
+            sInstance = new ResponseCacheInterceptor(
+                    new ResponseCache(new File(applicationContext.getCacheDir(), DIRECTORY), sMaxBytes),
+                    WebSettings.getDefaultUserAgent(applicationContext));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes effect if called before the first cached request, e.g. from Application#onCreate.
+     */
+    static synchronized void setMaxBytes(long maxBytes) {
+        sMaxBytes = maxBytes;
+    }
+
+    ResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the cached response, or null on a miss
+     */
+    @Nullable
+    WebResourceResponse getCached(String url) {
+        ResponseCache.Response cached = cache.get(url, System.currentTimeMillis());
+        if (cached == null) {
+            return null;
+        }
+        return new WebResourceResponse(cached.mimeType, cached.encoding, 200, "OK", cached.headers, cached.body);
+    }
+
+    /**
+     * Whether the url may have a prefetched response, cheap enough for every request.
+     */
+    static boolean isPrefetched(String url) {
+        return sPrefetchedUrls.contains(url);
+    }
+
+    /**
+     * For sub-resource requests, see {@link #takePrefetched} for pages.
+     *
+     * @return the prefetched response for the url, or null once it expired
+     */
+    @Nullable
+    WebResourceResponse getPrefetched(String url) {
+        WebResourceResponse response = getCached(url);
+        if (response == null) {
+            sPrefetchedUrls.remove(url);
+        }
+        return response;
+    }
+
+    /**
+     * Serves a prefetched page once, reloads and later visits load it from the network again.
+     *
+     * @return the prefetched response for the url, or null once it expired or was taken
+     */
+    @Nullable
+    WebResourceResponse takePrefetched(String url) {
+        if (!sPrefetchedUrls.remove(url)) {
+            return null;
+        }
+        WebResourceResponse response = getCached(url);
+        // The open body stays readable
+        cache.remove(url);
+        return response;
+    }
+
+    /**
+     * Fetches the urls in the background and caches the answers, so the WebView gets them from the
+     * cache when it requests them. Urls already cached or being fetched are skipped.
+     *
+     * @param rules the view's cachedResources, which decide how long each url is kept. Urls no
+     *              rule matches are kept for {@link #PREFETCH_TTL_MS}.
+     */
+    void prefetch(List<String> urls, final String userAgent, final ResponseCacheRules rules) {
+        for (final String url : urls) {
+            if (!prefetchesInFlight.add(url)) {
+                continue;
+            }
+            try {
+                prefetchExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long ttlMs = rules.getTtlMs(url);
+                            prefetchNow(url, userAgent, ttlMs > 0 ? ttlMs : PREFETCH_TTL_MS);
+                        } finally {
+                            prefetchesInFlight.remove(url);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                prefetchesInFlight.remove(url);
+                FLog.w(ReactConstants.TAG, "Too many prefetches queued, dropped " + url);
+            }
+        }
+    }
+
+    private void prefetchNow(String url, String userAgent, long ttlMs) {
+        if (cache.contains(url, System.currentTimeMillis())) {
+            sPrefetchedUrls.add(url);
+            return;
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = connect(url, Collections.<String, String>emptyMap(), userAgent);
+            // Only direct answers, a redirected page would be served under the wrong url
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return;
+            }
+            String[] contentType = parseContentType(connection.getContentType());
+            InputStream in = cache.store(url, contentType[0], contentType[1], getResponseHeaders(connection),
+                    System.currentTimeMillis() + ttlMs, connection.getInputStream());
+            try {
+                // Reading to the end is what adds the entry
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0) {
+                    // Copied to the cache by the stream
+                }
+            } finally {
+                in.close();
+            }
+            if (cache.contains(url, System.currentTimeMillis())) {
+                sPrefetchedUrls.add(url);
+            }
+        } catch (IOException | RuntimeException e) {
+            FLog.w(ReactConstants.TAG, "Could not prefetch " + url, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Fetches the url, caching the body for {@code ttlMs} when the server answers 200. Blocks on
+     * the network.
+     *
+     * @return the response, or null to let the WebView load the url itself, as for redirects, which
+     * an intercepted response can't carry
+     */
+    @Nullable
+    WebResourceResponse fetch(String url, Map<String, String> requestHeaders, long ttlMs) {
+        HttpURLConnection connection = null;
+        try {
+            connection = connect(url, requestHeaders, null);
+            int code = connection.getResponseCode();
+            if (code >= 300 && code < 400) {
+                connection.disconnect();
+                return null;
+            }
+            String[] contentType = parseContentType(connection.getContentType());
+            Map<String, String> headers = getResponseHeaders(connection);
+            String reason = connection.getResponseMessage();
+            if (TextUtils.isEmpty(reason)) {
+                reason = code == 200 ? "OK" : "Status " + code;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                InputStream body = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                return new WebResourceResponse(contentType[0], contentType[1], code, reason, headers, body);
+            }
+
+            InputStream body = cache.store(url, contentType[0], contentType[1], headers,
+                    System.currentTimeMillis() + ttlMs, connection.getInputStream());
+            return new WebResourceResponse(contentType[0], contentType[1], code, reason, headers, body);
+        } catch (IOException | RuntimeException e) {
+            FLog.w(ReactConstants.TAG, "Could not fetch " + url + " for the response cache", e);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Sends the request with the WebView's cookies, and hands the cookies the server sets back to
+     * it. Redirects are not followed: the answer belongs to the url that was asked for, and the
+     * cookies of each hop reach the WebView when it follows them itself. The response body is left
+     * to the caller.
+     *
+     * @param userAgent used when the request headers have none, null for the default one
+     */
+    private HttpURLConnection connect(String url, Map<String, String> requestHeaders, @Nullable String userAgent)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setInstanceFollowRedirects(false);
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            // A 304 for the WebView's own cache could not be stored
+            if (header.getValue() != null
+                    && !"If-None-Match".equalsIgnoreCase(header.getKey())
+                    && !"If-Modified-Since".equalsIgnoreCase(header.getKey())) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        if (connection.getRequestProperty("User-Agent") == null) {
+            connection.setRequestProperty("User-Agent", userAgent != null ? userAgent : defaultUserAgent);
+        }
+        CookieManager cookieManager = CookieManager.getInstance();
+        String cookies = cookieManager.getCookie(url);
+        if (cookies != null) {
+            connection.setRequestProperty("Cookie", cookies);
+        }
+
+        List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+        if (setCookies != null) {
+            for (String setCookie : setCookies) {
+                cookieManager.setCookie(url, setCookie);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Splits "text/css; charset=utf-8" into the mime type and the encoding, which may be null.
+     */
+    static String[] parseContentType(@Nullable String contentType) {
+        if (TextUtils.isEmpty(contentType)) {
+            return new String[]{DEFAULT_MIME_TYPE, null};
+        }
+
+        String[] parts = contentType.split(";");
+        String encoding = null;
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.toLowerCase(Locale.US).startsWith("charset=")) {
+                encoding = parameter.substring("charset=".length()).replace("\"", "").trim();
+            }
+        }
+        String mimeType = parts[0].trim();
+        return new String[]{mimeType.isEmpty() ? DEFAULT_MIME_TYPE : mimeType, encoding};
+    }
+
+    /**
+     * Headers passed on to the WebView and cached, without the ones that describe the connection
+     * or the encoding of the body on the wire, which HttpURLConnection already undid.
+     */
+    private static Map<String, String> getResponseHeaders(HttpURLConnection connection) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            String name = header.getKey();
+            if (name == null || header.getValue() == null || isExcludedHeader(name)) {
+                continue;
+            }
+            headers.put(name, TextUtils.join(", ", header.getValue()));
+        }
+        return headers;
+    }
+
+    private static boolean isExcludedHeader(String name) {
+        String lowerCase = name.toLowerCase(Locale.US);
+        return lowerCase.equals("set-cookie")
+                || lowerCase.equals("content-length")
+                || lowerCase.equals("content-encoding")
+                || lowerCase.equals("transfer-encoding")
+                || lowerCase.equals("connection")
+                || lowerCase.equals("keep-alive")
+                // Added by Android's HttpURLConnection
+                || lowerCase.startsWith("x-android-");
+    }
+}
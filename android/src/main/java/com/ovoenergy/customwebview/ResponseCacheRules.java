@@ -0,0 +1,88 @@
+package com.ovoenergy.customwebview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered list of response cache rules, each pairing a URL pattern with how long matching
+ * responses are kept in the {@link ResponseCache}. All the patterns are compiled into one
+ * {@link UrlPatternMatcher}, and the first matching rule wins.
+ *
+ * Rules are read from the `cachedResources` prop, e.g.
+ * <pre>
+ * [{pattern: 'https://cdn.partner.com/*', ttl: 86400},
+ *  {pattern: 'https://partner.com/fonts/*', ttl: 604800}]
+ * </pre>
+ * where ttl is in seconds. Malformed rules are skipped, see {@link #getSkippedRules}.
+ */
+final class ResponseCacheRules {
+
+    static final ResponseCacheRules EMPTY = new ResponseCacheRules(UrlPatternMatcher.EMPTY, new long[0],
+            Collections.<String>emptyList());
+
+    private static final String KEY_PATTERN = "pattern";
+    private static final String KEY_TTL = "ttl";
+
+    private final UrlPatternMatcher matcher;
+    private final long[] ttlsMs;
+    private final List<String> skippedRules;
+
+    private ResponseCacheRules(UrlPatternMatcher matcher, long[] ttlsMs, List<String> skippedRules) {
+        this.matcher = matcher;
+        this.ttlsMs = ttlsMs;
+        this.skippedRules = skippedRules;
+    }
+
+    /**
+     * @param rules maps with a `pattern` and a positive `ttl` in seconds
+     */
+    static ResponseCacheRules compile(List<?> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<String> patterns = new ArrayList<>(rules.size());
+        long[] ttlsMs = new long[rules.size()];
+        List<String> skippedRules = new ArrayList<>();
+        for (Object rule : rules) {
+            if (!(rule instanceof Map)) {
+                skippedRules.add("Cache rule must be an object: " + rule);
+                continue;
+            }
+            Object pattern = ((Map<?, ?>) rule).get(KEY_PATTERN);
+            Object ttl = ((Map<?, ?>) rule).get(KEY_TTL);
+            if (!(pattern instanceof String) || ((String) pattern).isEmpty()) {
+                skippedRules.add("Cache rule is missing a pattern: " + rule);
+                continue;
+            }
+            if (!(ttl instanceof Number) || ((Number) ttl).doubleValue() <= 0) {
+                skippedRules.add("Cache rule needs a positive ttl: " + rule);
+                continue;
+            }
+            ttlsMs[patterns.size()] = (long) (((Number) ttl).doubleValue() * 1000);
+            patterns.add((String) pattern);
+        }
+        return new ResponseCacheRules(UrlPatternMatcher.compile(patterns), ttlsMs, skippedRules);
+    }
+
+    /**
+     * @return why each malformed rule was left out, for the caller to log
+     */
+    List<String> getSkippedRules() {
+        return skippedRules;
+    }
+
+    boolean isEmpty() {
+        return matcher.isEmpty();
+    }
+
+    /**
+     * @return how long a response for the url is kept in ms, or -1 when it is not cached
+     */
+    long getTtlMs(String url) {
+        int index = matcher.match(url);
+        return index >= 0 ? ttlsMs[index] : -1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.ovoenergy.customwebview;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small bounded LRU cache of routing decisions, keyed by scheme and authority (host, plus userinfo
+ * and port when present).
+ *
+ * Redirect chains tend to hop through the same few hosts, so each WebView keeps one of these in front
+ * of {@link FilteringHelper#route(UrlScanner)}. Entries are tagged with the
+ * {@link FilteringHelper#getGeneration() generation} they were computed for and dropped as soon as the
+ * routing configuration changes. Not thread-safe, it is only used from WebViewClient callbacks on the
+ * UI thread.
+ */
+final class RouteCache {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<String, NavigationRoute> entries;
+    private final StringBuilder keyBuilder = new StringBuilder(64);
+    private int generation = -1;
+    private long hitCount;
+    private long missCount;
+
+    RouteCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    RouteCache(final int capacity) {
+        entries = new LinkedHashMap<String, NavigationRoute>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NavigationRoute> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached route for the scanned url, or computes and caches it with the given helper.
+     */
+    NavigationRoute route(FilteringHelper filteringHelper, UrlScanner scannedUrl) {
+        int currentGeneration = filteringHelper.getGeneration();
+        if (currentGeneration != generation) {
+            entries.clear();
+            generation = currentGeneration;
+        }
+
+        if (!filteringHelper.isRouteCacheable(scannedUrl)) {
+            return filteringHelper.route(scannedUrl);
+        }
+
+        String key = createKey(scannedUrl);
+        NavigationRoute route = entries.get(key);
+        if (route != null) {
+            hitCount++;
+            return route;
+        }
+
+        missCount++;
+        route = filteringHelper.route(scannedUrl);
+        entries.put(key, route);
+        return route;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hitCount;
+    }
+
+    long getMissCount() {
+        return missCount;
+    }
+
+    private String createKey(UrlScanner scannedUrl) {
+        String url = scannedUrl.getUrl();
+        StringBuilder key = keyBuilder;
+        key.setLength(0);
+        appendLowerCase(key, url, 0, scannedUrl.getSchemeEnd());
+        key.append(':');
+        if (scannedUrl.hasAuthority()) {
+            key.append("//");
+            appendLowerCase(key, url, scannedUrl.getAuthorityStart(), scannedUrl.getAuthorityEnd());
+        }
+        return key.toString();
+    }
+
+    private static void appendLowerCase(StringBuilder builder, String source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            builder.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RouteCache{size=" + entries.size() + ", hits=" + hitCount + ", misses=" + missCount + "}";
+    }
+}
@@ -0,0 +1,126 @@
+package com.ovoenergy.customwebview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered list of routing rules, each pairing a URL pattern with a {@link NavigationRoute}. All the
+ * patterns are compiled into one {@link UrlPatternMatcher}, and the first matching rule wins.
+ *
+ * Rules are read from the `routingRules` prop, e.g.
+ * <pre>
+ * [{pattern: 'https://partner.com/checkout/*', action: 'internal'},
+ *  {pattern: 'https://partner.com/*', action: 'customTab'},
+ *  {pattern: 'tel:*', action: 'external'}]
+ * </pre>
+ * Malformed rules are skipped, see {@link #getSkippedRules}.
+ */
+final class RoutingRules {
+
+    static final RoutingRules EMPTY = new RoutingRules(UrlPatternMatcher.EMPTY, new NavigationRoute[0], true,
+            Collections.<String>emptyList());
+
+    private static final String KEY_PATTERN = "pattern";
+    private static final String KEY_ACTION = "action";
+
+    private final UrlPatternMatcher matcher;
+    private final NavigationRoute[] routes;
+    private final boolean hostLevel;
+    private final List<String> skippedRules;
+
+    private RoutingRules(UrlPatternMatcher matcher, NavigationRoute[] routes, boolean hostLevel,
+                         List<String> skippedRules) {
+        this.matcher = matcher;
+        this.routes = routes;
+        this.hostLevel = hostLevel;
+        this.skippedRules = skippedRules;
+    }
+
+    /**
+     * @param rules maps with a `pattern` and an `action` of `internal`, `customTab` or `external`
+     */
+    static RoutingRules compile(List<?> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<String> patterns = new ArrayList<>(rules.size());
+        NavigationRoute[] routes = new NavigationRoute[rules.size()];
+        boolean hostLevel = true;
+        List<String> skippedRules = new ArrayList<>();
+        for (Object rule : rules) {
+            if (!(rule instanceof Map)) {
+                skippedRules.add("Routing rule must be an object: " + rule);
+                continue;
+            }
+            Object pattern = ((Map<?, ?>) rule).get(KEY_PATTERN);
+            NavigationRoute route = parseAction(((Map<?, ?>) rule).get(KEY_ACTION));
+            if (!(pattern instanceof String) || ((String) pattern).isEmpty()) {
+                skippedRules.add("Routing rule is missing a pattern: " + rule);
+                continue;
+            }
+            if (route == null) {
+                skippedRules.add("Unknown routing rule action: " + rule);
+                continue;
+            }
+            routes[patterns.size()] = route;
+            patterns.add((String) pattern);
+            hostLevel &= isHostLevel((String) pattern);
+        }
+        return new RoutingRules(UrlPatternMatcher.compile(patterns), routes, hostLevel, skippedRules);
+    }
+
+    /**
+     * @return why each malformed rule was left out, for the caller to log
+     */
+    List<String> getSkippedRules() {
+        return skippedRules;
+    }
+
+    boolean isEmpty() {
+        return matcher.isEmpty();
+    }
+
+    /**
+     * Whether every rule decides on the scheme and authority alone, in which case the outcome for
+     * a url can be cached by its scheme and authority.
+     */
+    boolean isHostLevel() {
+        return hostLevel;
+    }
+
+    /**
+     * @return the route of the first rule matching the url, or null when no rule matches
+     */
+    NavigationRoute match(String url) {
+        int index = matcher.match(url);
+        return index >= 0 ? routes[index] : null;
+    }
+
+    private static NavigationRoute parseAction(Object action) {
+        if ("internal".equals(action)) {
+            return NavigationRoute.INTERNAL;
+        } else if ("customTab".equals(action)) {
+            return NavigationRoute.CUSTOM_TAB;
+        } else if ("external".equals(action)) {
+            return NavigationRoute.EXTERNAL;
+        }
+        return null;
+    }
+
+    /**
+     * Patterns such as "https://*.partner.com/*" or "tel:*" only look at the scheme and authority,
+     * anything more specific also depends on the path.
+     */
+    private static boolean isHostLevel(String pattern) {
+        int authorityStart = pattern.indexOf("://");
+        if (authorityStart < 0) {
+            int colon = pattern.indexOf(':');
+            return colon > 0 && pattern.length() == colon + 2 && pattern.endsWith("*");
+        }
+        int pathStart = pattern.indexOf('/', authorityStart + 3);
+        return pathStart > 0 && pattern.length() == pathStart + 2 && pattern.endsWith("/*");
+    }
+}
@@ -0,0 +1,307 @@
+package com.ovoenergy.customwebview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable set of URL glob patterns compiled into a single bit-parallel automaton, so finding the
+ * first pattern that matches a URL costs one pass over the URL regardless of the number of patterns.
+ *
+ * Patterns are anchored at both ends and {@code *} is the only wildcard:
+ *  - in the scheme and authority ("https://*.example.com") it matches any run of characters except
+ *    '/', '?', '#', '@' and '\', so it can never cross into the path or userinfo
+ *  - after the authority ("https://example.com/checkout/*") it matches anything
+ *
+ * The scheme and authority are matched ASCII case-insensitively, the rest of the URL is case
+ * sensitive. Instances are thread-safe; patterns with up to 64 states in total (one per character)
+ * match without allocating.
+ */
+final class UrlPatternMatcher {
+
+    static final UrlPatternMatcher EMPTY = compile(new ArrayList<String>());
+
+    private static final int ASCII = 128;
+    private static final String AUTHORITY_STAR_EXCLUDES = "/?#@\\";
+
+    private final int words;
+    private final int patternCount;
+    // One bit per state, see compile. State j of a pattern means its first j tokens have matched.
+    private final long[] initial;
+    private final long[] accept;
+    private final long[] stars;
+    // advance[c]: states reached by consuming c, stay[c]: star states that can consume c
+    private final long[][] advance;
+    private final long[][] stay;
+    // Same tables for characters outside ASCII, which only match literally or through a star
+    private final char[] otherChars;
+    private final long[][] otherAdvance;
+    private final long[] otherStay;
+    private final int[] patternOfState;
+
+    private UrlPatternMatcher(int patternCount, long[] initial, long[] accept, long[] stars,
+                              long[][] advance, long[][] stay, char[] otherChars,
+                              long[][] otherAdvance, long[] otherStay, int[] patternOfState) {
+        this.words = initial.length;
+        this.patternCount = patternCount;
+        this.initial = initial;
+        this.accept = accept;
+        this.stars = stars;
+        this.advance = advance;
+        this.stay = stay;
+        this.otherChars = otherChars;
+        this.otherAdvance = otherAdvance;
+        this.otherStay = otherStay;
+        this.patternOfState = patternOfState;
+    }
+
+    static UrlPatternMatcher compile(List<String> patterns) {
+        List<List<Token>> tokenized = new ArrayList<>(patterns.size());
+        int states = 0;
+        for (String pattern : patterns) {
+            List<Token> tokens = tokenize(pattern);
+            tokenized.add(tokens);
+            states += tokens.size() + 1;
+        }
+
+        int words = Math.max(1, (states + 63) / 64);
+        long[] initial = new long[words];
+        long[] accept = new long[words];
+        long[] stars = new long[words];
+        long[][] advance = new long[ASCII][words];
+        long[][] stay = new long[ASCII][words];
+        long[] otherStay = new long[words];
+        int[] patternOfState = new int[words * 64];
+        Map<Character, long[]> other = new TreeMap<>();
+
+        int base = 0;
+        for (int p = 0; p < tokenized.size(); p++) {
+            List<Token> tokens = tokenized.get(p);
+            setBit(initial, base);
+            setBit(accept, base + tokens.size());
+            for (int j = 0; j <= tokens.size(); j++) {
+                patternOfState[base + j] = p;
+            }
+
+            for (int j = 0; j < tokens.size(); j++) {
+                Token token = tokens.get(j);
+                int state = base + j;
+                if (token.star) {
+                    setBit(stars, state);
+                    setBit(otherStay, state);
+                    for (char c = 0; c < ASCII; c++) {
+                        if (!token.authority || AUTHORITY_STAR_EXCLUDES.indexOf(c) < 0) {
+                            setBit(stay[c], state);
+                        }
+                    }
+                } else if (token.c < ASCII) {
+                    setBit(advance[token.c], state + 1);
+                    if (token.authority) {
+                        setBit(advance[Character.toUpperCase(token.c)], state + 1);
+                        setBit(advance[Character.toLowerCase(token.c)], state + 1);
+                    }
+                } else {
+                    long[] mask = other.get(token.c);
+                    if (mask == null) {
+                        mask = new long[words];
+                        other.put(token.c, mask);
+                    }
+                    setBit(mask, state + 1);
+                }
+            }
+            base += tokens.size() + 1;
+        }
+
+        // A pattern may start with a star, which can match the empty string
+        closeOverStars(initial, stars);
+
+        // TreeMap iterates in key order, which keeps the keys sorted for binary search
+        char[] otherChars = new char[other.size()];
+        long[][] otherAdvance = new long[other.size()][];
+        int i = 0;
+        for (Map.Entry<Character, long[]> entry : other.entrySet()) {
+            otherChars[i] = entry.getKey();
+            otherAdvance[i] = entry.getValue();
+            i++;
+        }
+
+        return new UrlPatternMatcher(patterns.size(), initial, accept, stars, advance, stay,
+                otherChars, otherAdvance, otherStay, patternOfState);
+    }
+
+    boolean isEmpty() {
+        return patternCount == 0;
+    }
+
+    int size() {
+        return patternCount;
+    }
+
+    /**
+     * @return the index of the first pattern matching the whole url, or -1 when none does
+     */
+    int match(String url) {
+        if (patternCount == 0 || url == null) {
+            return -1;
+        }
+        return words == 1 ? matchSingleWord(url) : matchMultiWord(url);
+    }
+
+    private int matchSingleWord(String url) {
+        long state = initial[0];
+        long stars = this.stars[0];
+        for (int i = 0, length = url.length(); i < length; i++) {
+            char c = url.charAt(i);
+            long advanceMask;
+            long stayMask;
+            if (c < ASCII) {
+                advanceMask = advance[c][0];
+                stayMask = stay[c][0];
+            } else {
+                long[] mask = otherAdvance(c);
+                advanceMask = mask != null ? mask[0] : 0;
+                stayMask = otherStay[0];
+            }
+            state = ((state << 1) & advanceMask) | (state & stayMask);
+            state |= (state & stars) << 1;
+            if (state == 0) {
+                return -1;
+            }
+        }
+
+        long accepted = state & accept[0];
+        return accepted != 0 ? patternOfState[Long.numberOfTrailingZeros(accepted)] : -1;
+    }
+
+    private int matchMultiWord(String url) {
+        long[] state = initial.clone();
+        long[] next = new long[words];
+        for (int i = 0, length = url.length(); i < length; i++) {
+            char c = url.charAt(i);
+            long[] advanceMask;
+            long[] stayMask;
+            if (c < ASCII) {
+                advanceMask = advance[c];
+                stayMask = stay[c];
+            } else {
+                advanceMask = otherAdvance(c);
+                stayMask = otherStay;
+            }
+
+            long any = 0;
+            long carry = 0;
+            for (int w = 0; w < words; w++) {
+                long shifted = (state[w] << 1) | carry;
+                carry = state[w] >>> 63;
+                next[w] = (advanceMask != null ? shifted & advanceMask[w] : 0) | (state[w] & stayMask[w]);
+            }
+            closeOverStars(next, stars);
+            for (int w = 0; w < words; w++) {
+                any |= next[w];
+            }
+            if (any == 0) {
+                return -1;
+            }
+
+            long[] swap = state;
+            state = next;
+            next = swap;
+        }
+
+        for (int w = 0; w < words; w++) {
+            long accepted = state[w] & accept[w];
+            if (accepted != 0) {
+                return patternOfState[w * 64 + Long.numberOfTrailingZeros(accepted)];
+            }
+        }
+        return -1;
+    }
+
+    private long[] otherAdvance(char c) {
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? otherAdvance[index] : null;
+    }
+
+    /**
+     * Lets every active star state also enter the state after it, without consuming a character.
+     * Consecutive stars are merged when tokenizing, so a single step is enough.
+     */
+    private static void closeOverStars(long[] state, long[] stars) {
+        long carry = 0;
+        for (int w = 0; w < state.length; w++) {
+            long active = state[w] & stars[w];
+            state[w] |= (active << 1) | carry;
+            carry = active >>> 63;
+        }
+    }
+
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << (index & 63);
+    }
+
+    private static List<Token> tokenize(String pattern) {
+        // The scheme and authority end at the first '/', '?' or '#' after "scheme://", or at the
+        // ':' of a scheme without authority such as "tel:"
+        int authorityEnd;
+        int colon = schemeEnd(pattern);
+        if (colon > 0) {
+            if (pattern.startsWith("//", colon + 1)) {
+                authorityEnd = colon + 3;
+                while (authorityEnd < pattern.length() && "/?#".indexOf(pattern.charAt(authorityEnd)) < 0) {
+                    authorityEnd++;
+                }
+            } else {
+                authorityEnd = colon + 1;
+            }
+        } else {
+            authorityEnd = 0;
+        }
+
+        List<Token> tokens = new ArrayList<>(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            boolean authority = i < authorityEnd;
+            if (c == '*') {
+                Token last = tokens.isEmpty() ? null : tokens.get(tokens.size() - 1);
+                if (last != null && last.star) {
+                    // An unrestricted star absorbs a restricted one next to it
+                    last.authority &= authority;
+                    continue;
+                }
+                tokens.add(new Token(true, c, authority));
+            } else {
+                tokens.add(new Token(false, c, authority));
+            }
+        }
+        return tokens;
+    }
+
+    private static int schemeEnd(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '+' || c == '-' || c == '.' || c == '*';
+            if (!valid) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Token {
+        final boolean star;
+        final char c;
+        boolean authority;
+
+        Token(boolean star, char c, boolean authority) {
+            this.star = star;
+            this.c = c;
+            this.authority = authority;
+        }
+    }
+}
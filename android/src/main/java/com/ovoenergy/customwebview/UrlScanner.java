@@ -0,0 +1,187 @@
+package com.ovoenergy.customwebview;
+
+/**
+ * Lightweight URL scanner that finds the scheme, host and port of a URL as offsets into the original
+ * String, without allocating or validating the rest of the URL.
+ *
+ * Unlike {@link java.net.URI} it never throws, so URLs with unescaped characters can still be routed.
+ * An instance is reusable but not thread-safe; keep one per caller thread.
+ */
+final class UrlScanner {
+
+    private String url = "";
+    private int schemeEnd = -1;
+    private int authorityStart = -1;
+    private int authorityEnd = -1;
+    private int hostStart = -1;
+    private int hostEnd = -1;
+    private int port = -1;
+
+    /**
+     * Scans the given URL, replacing the result of any previous scan.
+     *
+     * @return whether the URL has a scheme
+     */
+    boolean scan(String url) {
+        this.url = url != null ? url : "";
+        schemeEnd = -1;
+        authorityStart = -1;
+        authorityEnd = -1;
+        hostStart = -1;
+        hostEnd = -1;
+        port = -1;
+
+        String s = this.url;
+        int length = s.length();
+
+        // scheme = ALPHA *( ALPHA / DIGIT / "+" / "-" / "." ) ":"
+        int i = 0;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c == ':') {
+                break;
+            }
+            boolean valid = isAsciiLetter(c) || (i > 0 && (isAsciiDigit(c) || c == '+' || c == '-' || c == '.'));
+            if (!valid) {
+                return false;
+            }
+            i++;
+        }
+        if (i == 0 || i == length) {
+            return false;
+        }
+        schemeEnd = i;
+
+        // authority = "//" [ userinfo "@" ] host [ ":" port ]
+        if (!s.startsWith("//", schemeEnd + 1)) {
+            return true;
+        }
+        authorityStart = schemeEnd + 3;
+        authorityEnd = authorityStart;
+        int lastAt = -1;
+        while (authorityEnd < length) {
+            char c = s.charAt(authorityEnd);
+            if (c == '/' || c == '?' || c == '#' || c == '\\') {
+                break;
+            }
+            if (c == '@') {
+                lastAt = authorityEnd;
+            }
+            authorityEnd++;
+        }
+
+        hostStart = lastAt >= 0 ? lastAt + 1 : authorityStart;
+        hostEnd = hostStart;
+        if (hostEnd < authorityEnd && s.charAt(hostEnd) == '[') {
+            // IPv6 literal, keep the brackets as part of the host
+            while (hostEnd < authorityEnd && s.charAt(hostEnd) != ']') {
+                hostEnd++;
+            }
+            if (hostEnd < authorityEnd) {
+                hostEnd++;
+            }
+        } else {
+            while (hostEnd < authorityEnd && s.charAt(hostEnd) != ':') {
+                hostEnd++;
+            }
+        }
+
+        if (hostEnd < authorityEnd && s.charAt(hostEnd) == ':') {
+            port = parsePort(s, hostEnd + 1, authorityEnd);
+        }
+        return true;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    boolean hasScheme() {
+        return schemeEnd > 0;
+    }
+
+    /**
+     * @param scheme lower case scheme, without the trailing ':'
+     */
+    boolean schemeIs(String scheme) {
+        return schemeEnd == scheme.length() && url.regionMatches(true, 0, scheme, 0, schemeEnd);
+    }
+
+    int getSchemeEnd() {
+        return schemeEnd;
+    }
+
+    boolean hasAuthority() {
+        return authorityStart >= 0;
+    }
+
+    /**
+     * Start of the authority, including any userinfo
+     */
+    int getAuthorityStart() {
+        return authorityStart;
+    }
+
+    /**
+     * End of the authority, including any port
+     */
+    int getAuthorityEnd() {
+        return authorityEnd;
+    }
+
+    boolean hasHost() {
+        return hostEnd > hostStart;
+    }
+
+    int getHostStart() {
+        return hostStart;
+    }
+
+    int getHostEnd() {
+        return hostEnd;
+    }
+
+    /**
+     * @return the explicit port, or -1 when the URL has none
+     */
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * Whether this is a hierarchical http(s) or file URL, which the WebView loads itself.
+     */
+    boolean isWebUrl() {
+        return hasAuthority() && (schemeIs("https") || schemeIs("http") || schemeIs("file"));
+    }
+
+    /**
+     * Allocates the host String, prefer {@link #getHostStart()}/{@link #getHostEnd()} on hot paths.
+     */
+    String getHost() {
+        return hasHost() ? url.substring(hostStart, hostEnd) : null;
+    }
+
+    private static int parsePort(String s, int start, int end) {
+        if (start == end || end - start > 5) {
+            return -1;
+        }
+        int port = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (!isAsciiDigit(c)) {
+                return -1;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port <= 0xFFFF ? port : -1;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
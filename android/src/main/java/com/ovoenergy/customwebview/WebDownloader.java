@@ -5,45 +5,178 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
 import android.webkit.CookieManager;
+import android.webkit.JavascriptInterface;
 import android.webkit.MimeTypeMap;
+import android.webkit.URLUtil;
+import android.webkit.WebView;
 import android.widget.Toast;
 
 import com.facebook.common.logging.FLog;
+import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.common.ReactConstants;
 
+import org.json.JSONObject;
+
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Downloads files for a WebView.
+ *
+ * http(s) urls are handed to {@link DownloadManager}. data: and blob: urls only exist inside the
+ * WebView, so they are written to the download directory here: data: urls are decoded in chunks
+ * straight to the file, and blob: urls are read by the page in slices that are sent one at a time
+ * through the {@link #BLOB_BRIDGE_NAME} JavaScript interface. Neither payload is ever held in memory
+ * as a whole.
+ *
+ * With {@link #setParallelConnections} large http(s) files are fetched in-process over several
+ * range requests instead, see {@link RangedDownloader}. Either way, a url that was downloaded before
+ * is revalidated first and not fetched again while unchanged, see {@link DownloadCache}.
+ */
 public class WebDownloader {
+    static final String BLOB_BRIDGE_NAME = "__REACT_WEB_VIEW_DOWNLOAD_BRIDGE";
+
     private static final String FOLDER = Environment.DIRECTORY_DOWNLOADS;
+    private static final String BLOB_SCHEME = "blob:";
+    // Bytes read from a blob per bridge call, a multiple of 3 so every slice encodes without padding
+    private static final int BLOB_SLICE_SIZE = 384 * 1024;
+
+    // Downloads are prepared and enqueued off the UI thread, one at a time
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WebDownloader");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private static final int NETWORK_THREADS = 4;
+    private static final int RANGE_THREADS = 8;
+    private static final long IDLE_THREAD_TIMEOUT_S = 30;
+
+    // Runs cache revalidation and ranged downloads, which block on the network. Further downloads wait
+    // in the queue.
+    private static final ExecutorService NETWORK_EXECUTOR = newBoundedExecutor(NETWORK_THREADS, "WebDownloader-network");
+
+    // Runs the range requests of every ranged download. Separate from NETWORK_EXECUTOR, whose threads
+    // wait for them.
+    private static final ExecutorService RANGE_EXECUTOR = newBoundedExecutor(RANGE_THREADS, "WebDownloader-range");
+
+    // Resolved once, see getDownloadDirectory
+    @Nullable
+    private static volatile File sDownloadDirectory;
+    // Guarded by WebDownloader.class, see getDownloadCache
+    @Nullable
+    private static DownloadCache sDownloadCache;
+    // Urls with a ranged download in flight, across all WebViews
+    private static final Set<String> sRangedUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     private final Context context;
+    private final ReactContext reactContext;
+    private final WebView webView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // blob: downloads waiting for slices from the page, by transfer id
+    private final Map<String, BlobTransfer> blobTransfers = new ConcurrentHashMap<>();
+    private volatile int parallelConnections;
 
-    public WebDownloader(final Context context) {
-        this.context = context.getApplicationContext();
+    /**
+     * @param webView the view download events are reported to, and blob: urls are read from
+     */
+    public WebDownloader(final ReactContext reactContext, final WebView webView) {
+        this.context = reactContext.getApplicationContext();
+        this.reactContext = reactContext;
+        this.webView = webView;
     }
 
+    /**
+     * Starts downloading the url in the background, safe to call from the UI thread.
+     */
     public void download(final String url,
                          final String userAgent,
                          final String contentDisposition,
                          final String mimeType) {
+        final int viewTag = webView.getId();
+        final int connections = parallelConnections;
+        if (URLUtil.isNetworkUrl(url)) {
+            NETWORK_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        downloadNetworkUrl(viewTag, connections, url, userAgent, contentDisposition, mimeType);
+                    } catch (RuntimeException e) {
+                        FLog.e(ReactConstants.TAG, "Could not download " + url, e);
+                        showToast("Error downloading file", Toast.LENGTH_LONG);
+                    }
+                }
+            });
+            return;
+        }
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (DataUrlDecoder.isDataUrl(url)) {
+                        saveDataUrl(viewTag, url, contentDisposition, mimeType);
+                    } else if (url.regionMatches(true, 0, BLOB_SCHEME, 0, BLOB_SCHEME.length())) {
+                        startBlobTransfer(viewTag, url, contentDisposition, mimeType);
+                    } else {
+                        enqueue(viewTag, url, userAgent, contentDisposition, mimeType, DownloadCache.Lookup.NONE);
+                    }
+                } catch (RuntimeException e) {
+                    FLog.e(ReactConstants.TAG, "Could not download " + describeUrl(url), e);
+                    showToast("Error downloading file", Toast.LENGTH_LONG);
+                }
+            }
+        });
+    }
+
+    /**
+     * Number of parallel connections used for large http(s) downloads, see {@link RangedDownloader}.
+     * 0 or 1 leaves every download to DownloadManager.
+     */
+    void setParallelConnections(int connections) {
+        this.parallelConnections = connections;
+    }
+
+    private void enqueue(final int viewTag,
+                         final String url,
+                         final String userAgent,
+                         final String contentDisposition,
+                         final String mimeType,
+                         final DownloadCache.Lookup lookup) {
         final Uri uri = Uri.parse(url);
         final DownloadManager dm = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
         final String cookies = CookieManager.getInstance().getCookie(url);
-        String filePostfix = "";
-
-        // @TODO add prop to toggle this behaviour
-        if (true) {
-            filePostfix = filePostfix + "_" + System.currentTimeMillis();
-        }
-
-        final String fileName = String.format("%s%s.%s", uri.getLastPathSegment(), filePostfix, MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType));
+        final String fileName = buildFileName(uri, mimeType);
 
         FLog.d(ReactConstants.TAG, "Downloading File SRC URI: " + uri);
         FLog.d(ReactConstants.TAG, "Downloading Filename    : " + fileName);
-        checkAndDeleteExistingFile(fileName);
+        final File downloadDirectory = getDownloadDirectory();
+        checkAndDeleteExistingFile(downloadDirectory, fileName);
 
         final DownloadManager.Request request = new DownloadManager.Request(uri);
         request.setMimeType(mimeType);
@@ -55,27 +188,23 @@ public class WebDownloader {
         request.setNotificationVisibility(DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
         request.allowScanningByMediaScanner();
 
-        Toast successToast = Toast.makeText(context, "Downloading file", Toast.LENGTH_SHORT);
-        Toast errorToast = Toast.makeText(context, "Error downloading file", Toast.LENGTH_LONG);
-
-
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             request.setDestinationInExternalFilesDir(context, FOLDER, fileName);
-            dm.enqueue(request);
-            successToast.show();
+            track(dm.enqueue(request), url, userAgent, viewTag, lookup);
+            showToast("Downloading file", Toast.LENGTH_SHORT);
 
         } else {
             // this is mostly here as fallback for showing the error toast
-            final File destinationFile = getDestinationFile(fileName);
-            if (destinationFile != null) {
+            if (downloadDirectory != null) {
+                final File destinationFile = new File(downloadDirectory, fileName);
                 FLog.d(ReactConstants.TAG, "Using file " + destinationFile.getAbsolutePath());
 
                 // LOCAL LOCATION
                 request.setDestinationUri(Uri.parse(destinationFile.toURI().toString()));
-                dm.enqueue(request);
-                successToast.show();
+                track(dm.enqueue(request), url, userAgent, viewTag, lookup);
+                showToast("Downloading file", Toast.LENGTH_SHORT);
             } else {
-                errorToast.show();
+                showToast("Error downloading file", Toast.LENGTH_LONG);
                 FLog.w(ReactConstants.TAG, "No destination found for download");
             }
         }
@@ -83,36 +212,548 @@ public class WebDownloader {
 
     }
 
+    /**
+     * The JavaScript interface blob: downloads are streamed through, to be registered on the WebView
+     * as {@link #BLOB_BRIDGE_NAME}. Only safe to expose on API 17+, where only annotated methods are
+     * reachable from JavaScript.
+     */
+    Object getBlobBridge() {
+        return new BlobBridge();
+    }
+
+    /**
+     * Abandons blob: downloads still in flight, e.g. when the WebView is destroyed.
+     */
+    void release() {
+        Iterator<BlobTransfer> iterator = blobTransfers.values().iterator();
+        while (iterator.hasNext()) {
+            final BlobTransfer transfer = iterator.next();
+            iterator.remove();
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    failLocalDownload(transfer.viewTag, transfer.url, transfer.file, transfer.out, "cancelled", null);
+                }
+            });
+        }
+    }
+
+    private void saveDataUrl(final int viewTag,
+                             final String url,
+                             final String contentDisposition,
+                             final String mimeType) {
+        final String type = mimeType != null && !mimeType.isEmpty() ? mimeType : DataUrlDecoder.getMimeType(url);
+        final String description = describeUrl(url);
+        final File file = createLocalFile(description, contentDisposition, type);
+        if (file == null) {
+            failLocalDownload(viewTag, description, null, null, "failed", "No destination found for download");
+            return;
+        }
+
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            DataUrlDecoder.decode(url, out);
+            out.close();
+            out = null;
+            completeLocalDownload(viewTag, registerCompletedDownload(file, type), description, file);
+        } catch (IOException e) {
+            FLog.w(ReactConstants.TAG, "Could not save " + description, e);
+            failLocalDownload(viewTag, description, file, out, "failed", e.getMessage());
+        }
+    }
+
+    private void startBlobTransfer(final int viewTag,
+                                   final String url,
+                                   final String contentDisposition,
+                                   final String mimeType) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            failLocalDownload(viewTag, url, null, null, "failed", "blob: downloads need API 17");
+            return;
+        }
+        final String type = mimeType != null && !mimeType.isEmpty() ? mimeType : "application/octet-stream";
+        final File file = createLocalFile(url, contentDisposition, type);
+        if (file == null) {
+            failLocalDownload(viewTag, url, null, null, "failed", "No destination found for download");
+            return;
+        }
+
+        final OutputStream out;
+        try {
+            out = new FileOutputStream(file);
+        } catch (IOException e) {
+            failLocalDownload(viewTag, url, file, null, "failed", e.getMessage());
+            return;
+        }
+
+        final String id = UUID.randomUUID().toString();
+        blobTransfers.put(id, new BlobTransfer(viewTag, url, type, file, out));
+        showToast("Downloading file", Toast.LENGTH_SHORT);
+
+        final String script = blobTransferScript(id, url);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    webView.evaluateJavascript(script, null);
+                } else {
+                    webView.loadUrl("javascript:" + script);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the blob in slices with FileReader and hands each slice to the bridge as base64. Bridge
+     * calls are synchronous, so the page never gets more than one slice ahead of the file.
+     */
+    private static String blobTransferScript(String id, String url) {
+        return "(function() {\n" +
+                "  var bridge = window." + BLOB_BRIDGE_NAME + ";\n" +
+                "  var id = " + JSONObject.quote(id) + ";\n" +
+                "  var xhr = new XMLHttpRequest();\n" +
+                "  xhr.open('GET', " + JSONObject.quote(url) + ");\n" +
+                "  xhr.responseType = 'blob';\n" +
+                "  xhr.onerror = function() { bridge.error(id, 'Could not read blob'); };\n" +
+                "  xhr.onload = function() {\n" +
+                "    var blob = xhr.response;\n" +
+                "    var offset = 0;\n" +
+                "    var next = function() {\n" +
+                "      if (offset >= blob.size) { bridge.end(id); return; }\n" +
+                "      var reader = new FileReader();\n" +
+                "      reader.onload = function() {\n" +
+                "        var result = reader.result;\n" +
+                "        bridge.chunk(id, result.substring(result.indexOf(',') + 1));\n" +
+                "        next();\n" +
+                "      };\n" +
+                "      reader.onerror = function() { bridge.error(id, String(reader.error)); };\n" +
+                "      reader.readAsDataURL(blob.slice(offset, offset += " + BLOB_SLICE_SIZE + "));\n" +
+                "    };\n" +
+                "    next();\n" +
+                "  };\n" +
+                "  xhr.send();\n" +
+                "})();";
+    }
 
     @Nullable
-    private File getDestinationFile(final String fileName) {
+    private File createLocalFile(final String url, final String contentDisposition, final String mimeType) {
+        final File downloadDirectory = getDownloadDirectory();
+        if (downloadDirectory == null) {
+            return null;
+        }
 
-        final File[] downloadDirs = ContextCompat.getExternalFilesDirs(context, FOLDER);
-        for (final File dir : downloadDirs) {
+        final String guessedName = URLUtil.guessFileName(url, contentDisposition, mimeType);
+        final String filePostfix = "_" + System.currentTimeMillis();
+        final int extension = guessedName.lastIndexOf('.');
+        final String fileName = extension > 0
+                ? guessedName.substring(0, extension) + filePostfix + guessedName.substring(extension)
+                : guessedName + filePostfix;
+
+        FLog.d(ReactConstants.TAG, "Downloading Filename    : " + fileName);
+        checkAndDeleteExistingFile(downloadDirectory, fileName);
+        return new File(downloadDirectory, fileName);
+    }
 
-            if (dir != null && dir.exists()) {
-                return new File(dir, fileName);
+    /**
+     * Lists a file written by this class in the Downloads app and shows the usual completion
+     * notification.
+     *
+     * @return the DownloadManager id of the file
+     */
+    private long registerCompletedDownload(final File file, final String mimeType) {
+        final DownloadManager dm = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
+        return dm.addCompletedDownload(file.getName(), file.getName(), true, mimeType,
+                file.getAbsolutePath(), file.length(), true);
+    }
+
+    private void completeLocalDownload(final int viewTag, final long downloadId, final String url, final File file) {
+        DownloadTracker.emitComplete(reactContext, viewTag, downloadId, url, "successful",
+                Uri.fromFile(file).toString(), null);
+        showToast("File downloaded", Toast.LENGTH_SHORT);
+    }
+
+    private void failLocalDownload(final int viewTag,
+                                   final String url,
+                                   @Nullable final File file,
+                                   @Nullable final OutputStream out,
+                                   final String status,
+                                   @Nullable final String reason) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The file is deleted anyway
             }
         }
-        // fallback
-        return null;
+        if (file != null && file.exists()) {
+            FLog.d(ReactConstants.TAG, "Deleting " + file + ": " + file.delete());
+        }
+        DownloadTracker.emitComplete(reactContext, viewTag, -1, url, status, null, reason);
+        if (!"cancelled".equals(status)) {
+            showToast("Error downloading file", Toast.LENGTH_LONG);
+        }
+    }
+
+    /**
+     * data: urls can be megabytes long, only their header is logged and reported to JS
+     */
+    private static String describeUrl(final String url) {
+        if (!DataUrlDecoder.isDataUrl(url)) {
+            return url;
+        }
+        final int comma = url.indexOf(',');
+        return comma < 0 ? url : url.substring(0, comma + 1);
+    }
+
+    /**
+     * Answers with the previous download of the url when the server says it is unchanged, otherwise
+     * downloads it. Runs on {@link #NETWORK_EXECUTOR}.
+     */
+    private void downloadNetworkUrl(final int viewTag,
+                                    final int connections,
+                                    final String url,
+                                    final String userAgent,
+                                    final String contentDisposition,
+                                    final String mimeType) {
+        final Map<String, String> headers = getRequestHeaders(url, userAgent);
+
+        final DownloadCache cache = getDownloadCache();
+        final DownloadCache.Lookup lookup = cache != null ? cache.lookup(url, headers) : DownloadCache.Lookup.NONE;
+        if (lookup.file != null) {
+            FLog.d(ReactConstants.TAG, "Reusing unchanged download " + lookup.file);
+            // Reported as a new download, the earlier one may have had its id reused since
+            completeLocalDownload(viewTag, DownloadTracker.getInstance(context).newInProcessId(), url, lookup.file);
+            return;
+        }
+
+        if (connections > 1) {
+            downloadRanged(viewTag, connections, url, userAgent, headers, contentDisposition, mimeType);
+        } else {
+            enqueueWithValidators(viewTag, url, userAgent, headers, contentDisposition, mimeType);
+        }
+    }
+
+    private static Map<String, String> getRequestHeaders(final String url, final String userAgent) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Cookie", CookieManager.getInstance().getCookie(url));
+        headers.put("User-Agent", userAgent);
+        return headers;
     }
 
-    private void checkAndDeleteExistingFile(final String fileName) {
+    /**
+     * Downloads over several connections when the server supports ranges, otherwise hands the
+     * download to DownloadManager. Runs on {@link #NETWORK_EXECUTOR} for the whole transfer.
+     */
+    private void downloadRanged(final int viewTag,
+                                final int connections,
+                                final String url,
+                                final String userAgent,
+                                final Map<String, String> headers,
+                                final String contentDisposition,
+                                final String mimeType) {
+        final File downloadDirectory = getDownloadDirectory();
+        if (downloadDirectory == null || !sRangedUrls.add(url)) {
+            // Already in flight: the partial file is named after the url, a second transfer would
+            // write over the first one
+            enqueueWithValidators(viewTag, url, userAgent, headers, contentDisposition, mimeType);
+            return;
+        }
+        try {
+            downloadRangedTo(downloadDirectory, viewTag, connections, url, userAgent, headers, contentDisposition,
+                    mimeType);
+        } finally {
+            sRangedUrls.remove(url);
+        }
+    }
+
+    private void downloadRangedTo(final File downloadDirectory,
+                                  final int viewTag,
+                                  final int connections,
+                                  final String url,
+                                  final String userAgent,
+                                  final Map<String, String> headers,
+                                  final String contentDisposition,
+                                  final String mimeType) {
+        // Named after the url, so downloading the same url again resumes an interrupted transfer
+        final File partialFile = new File(downloadDirectory,
+                ".partial-" + UUID.nameUUIDFromBytes(url.getBytes(Charset.forName("UTF-8"))));
+
+        final DownloadTracker tracker = DownloadTracker.getInstance(context);
+        final DownloadTracker.InProcessProgress progress = tracker.trackInProcess(url, reactContext, viewTag);
+        final RangedDownloader downloader =
+                new RangedDownloader(RANGE_EXECUTOR, connections, RangedDownloader.DEFAULT_MIN_SPLIT_SIZE);
+        final boolean downloaded;
+        try {
+            downloaded = downloader.download(url, headers, partialFile, new RangedDownloader.ProgressListener() {
+                        private final AtomicBoolean started = new AtomicBoolean();
+
+                        @Override
+                        public void onProgress(long bytesDownloaded, long totalBytes) {
+                            if (started.compareAndSet(false, true)) {
+                                showToast("Downloading file", Toast.LENGTH_SHORT);
+                            }
+                            progress.totalBytes = totalBytes;
+                            progress.bytesDownloaded = bytesDownloaded;
+                        }
+                    });
+        } catch (IOException e) {
+            FLog.w(ReactConstants.TAG, "Could not download " + url + ", starting it again resumes it", e);
+            DownloadTracker.emitComplete(reactContext, viewTag, progress.id, url, "failed", null, e.getMessage());
+            showToast("Error downloading file", Toast.LENGTH_LONG);
+            return;
+        } finally {
+            tracker.untrack(progress.id);
+        }
+
+        if (!downloaded) {
+            enqueueWithValidators(viewTag, url, userAgent, headers, contentDisposition, mimeType);
+            return;
+        }
+
+        final String fileName = buildFileName(Uri.parse(url), mimeType);
+        checkAndDeleteExistingFile(downloadDirectory, fileName);
+        final File file = new File(downloadDirectory, fileName);
+        if (!partialFile.renameTo(file)) {
+            failLocalDownload(viewTag, url, partialFile, null, "failed", "Could not move download to " + file);
+            return;
+        }
+        registerCompletedDownload(file, mimeType);
+        // The validators of the probe, which If-Range tied every range to
+        recordDownload(url, file, new DownloadCache.Lookup(null, downloader.getEtag(), downloader.getLastModified()));
+        completeLocalDownload(viewTag, progress.id, url, file);
+    }
+
+    /**
+     * Hands the download to DownloadManager, which does not report the response headers. The
+     * validators are asked for with a HEAD request instead, when downloads are indexed.
+     */
+    private void enqueueWithValidators(final int viewTag,
+                                       final String url,
+                                       final String userAgent,
+                                       final Map<String, String> headers,
+                                       final String contentDisposition,
+                                       final String mimeType) {
+        final DownloadCache.Lookup validators = getDownloadCache() != null
+                ? DownloadCache.fetchValidators(url, headers)
+                : DownloadCache.Lookup.NONE;
+        enqueueLater(viewTag, url, userAgent, contentDisposition, mimeType, validators);
+    }
+
+    private void enqueueLater(final int viewTag,
+                              final String url,
+                              final String userAgent,
+                              final String contentDisposition,
+                              final String mimeType,
+                              final DownloadCache.Lookup lookup) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    enqueue(viewTag, url, userAgent, contentDisposition, mimeType, lookup);
+                } catch (RuntimeException e) {
+                    FLog.e(ReactConstants.TAG, "Could not download " + url, e);
+                    showToast("Error downloading file", Toast.LENGTH_LONG);
+                }
+            }
+        });
+    }
+
+    private static ExecutorService newBoundedExecutor(int threads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                IDLE_THREAD_TIMEOUT_S, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static String buildFileName(final Uri uri, final String mimeType) {
+        String filePostfix = "";
+
+        // @TODO add prop to toggle this behaviour
+        if (true) {
+            filePostfix = filePostfix + "_" + System.currentTimeMillis();
+        }
+
+        return String.format("%s%s.%s", uri.getLastPathSegment(), filePostfix, MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType));
+    }
+
+    private void track(long downloadId, final String url, final String userAgent, int viewTag,
+                       final DownloadCache.Lookup lookup) {
+        DownloadTracker.CompletionListener listener = null;
+        if (lookup.hasValidator()) {
+            listener = new DownloadTracker.CompletionListener() {
+                @Override
+                public void onComplete(final long downloadId, String status, @Nullable final String localUri) {
+                    if (!"successful".equals(status) || localUri == null || !localUri.startsWith("file:")) {
+                        return;
+                    }
+                    NETWORK_EXECUTOR.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Only the file DownloadManager fetched while the validators stayed
+                            // the same is known to be the version they describe
+                            DownloadCache.Lookup current =
+                                    DownloadCache.fetchValidators(url, getRequestHeaders(url, userAgent));
+                            if (current.hasSameValidators(lookup)) {
+                                recordDownload(url, new File(Uri.parse(localUri).getPath()), lookup);
+                            }
+                        }
+                    });
+                }
+            };
+        }
+        DownloadTracker.getInstance(context).track(downloadId, url, reactContext, viewTag, listener);
+    }
+
+    private void recordDownload(String url, File file, DownloadCache.Lookup lookup) {
+        final DownloadCache cache = getDownloadCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.record(url, file, lookup);
+        } catch (IOException e) {
+            FLog.w(ReactConstants.TAG, "Could not index download of " + url, e);
+        }
+    }
+
+    private void showToast(final String text, final int duration) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, text, duration).show();
+            }
+        });
+    }
+
+    /**
+     * The first available external files directory for downloads. Resolved once and reused for
+     * every download, unless it disappears (e.g. the storage was unmounted).
+     */
+    @Nullable
+    private File getDownloadDirectory() {
+        File directory = sDownloadDirectory;
+        if (directory != null && directory.exists()) {
+            return directory;
+        }
+
+        directory = null;
         final File[] downloadDirs = ContextCompat.getExternalFilesDirs(context, FOLDER);
         if (downloadDirs != null) {
             for (final File dir : downloadDirs) {
-                if (dir != null) {
-                    if (dir.exists()) {
-                        final File location = new File(dir, fileName);
-                        if (location.exists()) {
-                            FLog.d(ReactConstants.TAG, "Deleting " + location + ": " + location.delete());
-                        }
-                    } else {
-                        dir.mkdirs();
+                if (dir != null && (dir.exists() || dir.mkdirs())) {
+                    directory = dir;
+                    break;
+                }
+            }
+        }
+        sDownloadDirectory = directory;
+        return directory;
+    }
+
+    /**
+     * Index of finished downloads, kept next to them so it goes away together with the files.
+     */
+    @Nullable
+    private DownloadCache getDownloadCache() {
+        final File directory = getDownloadDirectory();
+        if (directory == null) {
+            return null;
+        }
+        synchronized (WebDownloader.class) {
+            if (sDownloadCache == null) {
+                sDownloadCache = new DownloadCache(new File(directory, ".download-index"));
+            }
+            return sDownloadCache;
+        }
+    }
+
+    private void checkAndDeleteExistingFile(@Nullable final File downloadDirectory, final String fileName) {
+        if (downloadDirectory != null) {
+            final File location = new File(downloadDirectory, fileName);
+            if (location.exists()) {
+                FLog.d(ReactConstants.TAG, "Deleting " + location + ": " + location.delete());
+            }
+        }
+    }
+
+    private static final class BlobTransfer {
+        final int viewTag;
+        final String url;
+        final String mimeType;
+        final File file;
+        final OutputStream out;
+        final Base64StreamDecoder decoder;
+
+        BlobTransfer(int viewTag, String url, String mimeType, File file, OutputStream out) {
+            this.viewTag = viewTag;
+            this.url = url;
+            this.mimeType = mimeType;
+            this.file = file;
+            this.out = out;
+            this.decoder = new Base64StreamDecoder(out);
+        }
+    }
+
+    /**
+     * Called from the WebView's JavaBridge thread. Slices of one transfer arrive in order on that
+     * thread, so they are decoded and written there; finishing is handed to the executor.
+     */
+    private class BlobBridge {
+
+        @JavascriptInterface
+        public void chunk(String id, String base64) {
+            final BlobTransfer transfer = blobTransfers.get(id);
+            if (transfer == null) {
+                return;
+            }
+            try {
+                transfer.decoder.write(base64);
+            } catch (IOException e) {
+                FLog.w(ReactConstants.TAG, "Could not save " + transfer.url, e);
+                error(id, e.getMessage());
+            }
+        }
+
+        @JavascriptInterface
+        public void end(String id) {
+            final BlobTransfer transfer = blobTransfers.remove(id);
+            if (transfer == null) {
+                return;
+            }
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        transfer.decoder.finish();
+                        transfer.out.close();
+                        completeLocalDownload(transfer.viewTag, registerCompletedDownload(transfer.file, transfer.mimeType),
+                                transfer.url, transfer.file);
+                    } catch (IOException e) {
+                        failLocalDownload(transfer.viewTag, transfer.url, transfer.file, transfer.out, "failed", e.getMessage());
                     }
                 }
+            });
+        }
+
+        @JavascriptInterface
+        public void error(String id, final String message) {
+            final BlobTransfer transfer = blobTransfers.remove(id);
+            if (transfer == null) {
+                return;
             }
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    failLocalDownload(transfer.viewTag, transfer.url, transfer.file, transfer.out, "failed", message);
+                }
+            });
         }
     }
 }
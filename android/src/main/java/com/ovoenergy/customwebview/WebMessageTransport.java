@@ -0,0 +1,165 @@
+package com.ovoenergy.customwebview;
+
+import android.annotation.TargetApi;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.webkit.ValueCallback;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
+import android.webkit.WebView;
+
+/**
+ * Carries messages between the page and native code over a {@link WebMessagePort} pair instead of
+ * the JavaBridge, see the messagePort prop.
+ *
+ * When a page has loaded, a script replaces window.postMessage and waits for a port. One end of a
+ * new message channel is then handed to the page, and both directions use it until the next page
+ * starts. Messages the page posts before the port arrives are queued by the script. If the channel
+ * is replaced on the same page, the script switches to the new port. Only used from the UI thread.
+ *
+ * The script accepts a single port per link, and only from a message without a source, which is
+ * what native code posts, so frames cannot hand it a port of their own. The port is posted to the
+ * origin of the page it was linked for, and is dropped if another document has loaded meanwhile.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+class WebMessageTransport {
+
+    interface Receiver {
+        void onMessage(String message);
+    }
+
+    // Marks the message that hands over the port, so it is not mistaken for one from native code
+    private static final String HANDSHAKE = "__REACT_WEB_VIEW_PORT";
+    private static final Uri ANY_ORIGIN = Uri.parse("*");
+    // Installed once per page, every run waits for one port
+    private static final String LINK_SCRIPT = "(function() {" +
+            "var link = window.__REACT_WEB_VIEW_PORT_LINK;" +
+            "if (!link) {" +
+            "link = window.__REACT_WEB_VIEW_PORT_LINK = {port: null, queue: []};" +
+            "window.originalPostMessage = window.postMessage;" +
+            "window.postMessage = function(data) {" +
+            "if (link.port) {" +
+            "link.port.postMessage(String(data));" +
+            "} else {" +
+            "link.queue.push(String(data));" +
+            "}" +
+            "};" +
+            "}" +
+            "var onHandshake = function(e) {" +
+            "if (e.data !== '" + HANDSHAKE + "' || e.source !== null || !e.ports || !e.ports.length) {" +
+            "return;" +
+            "}" +
+            "e.stopImmediatePropagation();" +
+            "window.removeEventListener('message', onHandshake, true);" +
+            "var port = link.port = e.ports[0];" +
+            "port.onmessage = function(m) {" +
+            "var event;" +
+            "var data = {data: m.data};" +
+            "try {" +
+            "event = new MessageEvent('message', data);" +
+            "} catch (err) {" +
+            "event = document.createEvent('MessageEvent');" +
+            "event.initMessageEvent('message', true, true, data.data, data.origin, data.lastEventId, data.source);" +
+            "}" +
+            "document.dispatchEvent(event);" +
+            "};" +
+            "var queue = link.queue;" +
+            "link.queue = [];" +
+            "for (var i = 0; i < queue.length; i++) {" +
+            "port.postMessage(queue[i]);" +
+            "}" +
+            "};" +
+            "window.addEventListener('message', onHandshake, true);" +
+            "})();";
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    private final WebView webView;
+    private final Receiver receiver;
+    // Native end of the current page's channel
+    @Nullable
+    private WebMessagePort port;
+    // Bumped on every page, so a link that completes after the page changed is ignored
+    private int pageGeneration;
+
+    private final WebMessagePort.WebMessageCallback portCallback = new WebMessagePort.WebMessageCallback() {
+        @Override
+        public void onMessage(WebMessagePort port, WebMessage message) {
+            if (port == WebMessageTransport.this.port && message.getData() != null) {
+                receiver.onMessage(message.getData());
+            }
+        }
+    };
+
+    WebMessageTransport(WebView webView, Receiver receiver) {
+        this.webView = webView;
+        this.receiver = receiver;
+    }
+
+    /**
+     * Installs the page side of the transport and hands it a port, once per page.
+     */
+    void link() {
+        if (port != null) {
+            return;
+        }
+
+        final int generation = pageGeneration;
+        final Uri origin = getOrigin(webView.getUrl());
+        webView.evaluateJavascript(LINK_SCRIPT, new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                // The listener is in place now, so the port cannot arrive before it
+                if (generation != pageGeneration || port != null) {
+                    return;
+                }
+                WebMessagePort[] ports = webView.createWebMessageChannel();
+                port = ports[0];
+                port.setWebMessageCallback(portCallback);
+                webView.postWebMessage(new WebMessage(HANDSHAKE, new WebMessagePort[]{ports[1]}), origin);
+            }
+        });
+    }
+
+    /**
+     * Pages without a host, like about:blank or file: urls, have an opaque origin that only the
+     * wildcard matches.
+     */
+    private static Uri getOrigin(@Nullable String url) {
+        Uri uri = url != null ? Uri.parse(url) : null;
+        if (uri == null || uri.getScheme() == null || uri.getHost() == null) {
+            return ANY_ORIGIN;
+        }
+        String origin = uri.getScheme() + "://" + uri.getHost();
+        return Uri.parse(uri.getPort() != -1 ? origin + ":" + uri.getPort() : origin);
+    }
+
+    boolean isLinked() {
+        return port != null;
+    }
+
+    /**
+     * Sends a message to the page. Only valid while {@link #isLinked}.
+     */
+    void post(String message) {
+        port.postMessage(new WebMessage(message));
+    }
+
+    /**
+     * The new page gets a new channel, the old one is closed.
+     */
+    void onPageStarted() {
+        pageGeneration++;
+        close();
+    }
+
+    void close() {
+        if (port != null) {
+            port.close();
+            port = null;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.ovoenergy.customwebview;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.Nullable;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.uimanager.ThemedReactContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of configured WebViews, so mounting a WebView does not pay for creating and configuring one.
+ *
+ * The pool is refilled up to its size while the UI thread is idle, one WebView per idle pass.
+ * Dropped WebViews are reset and kept for reuse while there is room, once about:blank has loaded and
+ * their history is cleared, so no page of the previous user can be gone back to.
+ *
+ * Pooled WebViews belong to the React context they were created with, and React Native creates one
+ * per root view, so views are only handed to the root view they were created for. The pool is
+ * shared by every root view: it is refilled for the one that mounted a WebView last, and a released
+ * WebView takes the place of the oldest idle one of another root view when the pool is full. Pooled
+ * WebViews are destroyed when the React instance is, or when the system is low on memory. Only used
+ * from the UI thread.
+ */
+class WebViewPool implements LifecycleEventListener, ComponentCallbacks2 {
+
+    interface Factory {
+        CustomWebViewManager.FilteringReactWebView create(ThemedReactContext reactContext);
+
+        /**
+         * Brings a released WebView back to the state of one {@link #create} returned.
+         */
+        void reset(CustomWebViewManager.FilteringReactWebView webView);
+    }
+
+    private final int maxSize;
+    private final Factory factory;
+    // Oldest first, of any root view
+    private final ArrayList<CustomWebViewManager.FilteringReactWebView> idleViews = new ArrayList<>();
+    // Released, waiting for about:blank to load
+    private final ArrayList<CustomWebViewManager.FilteringReactWebView> resettingViews = new ArrayList<>();
+    // Contexts the pool listens to, weak so root views that are gone are not kept
+    private final Set<ThemedReactContext> contexts =
+            Collections.newSetFromMap(new WeakHashMap<ThemedReactContext, Boolean>());
+
+    // Set while registered for memory callbacks
+    @Nullable
+    private Context applicationContext;
+    // The root view that mounted a WebView last, refills are created for it
+    @Nullable
+    private ThemedReactContext refillContext;
+    private boolean refillScheduled;
+    private boolean trimmed;
+
+    private final MessageQueue.IdleHandler refillHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (refillContext == null || trimmed || isFull()) {
+                refillScheduled = false;
+                return false;
+            }
+            idleViews.add(factory.create(refillContext));
+            refillScheduled = !isFull();
+            return refillScheduled;
+        }
+    };
+
+    private final WebViewClient resetClient = new WebViewClient() {
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            // The previous page may still report its own load
+            if (CustomWebViewManager.BLANK_URL.equals(url) && resettingViews.remove(view)) {
+                onReset((CustomWebViewManager.FilteringReactWebView) view);
+            }
+        }
+    };
+
+    WebViewPool(int maxSize, Factory factory) {
+        this.maxSize = maxSize;
+        this.factory = factory;
+    }
+
+    /**
+     * @return a configured WebView at about:blank, or null when none is ready yet
+     */
+    @Nullable
+    CustomWebViewManager.FilteringReactWebView acquire(ThemedReactContext context) {
+        attach(context);
+        // The caller needs one now, it is fine to grow the pool again afterwards
+        trimmed = false;
+        refillContext = context;
+
+        CustomWebViewManager.FilteringReactWebView webView = null;
+        for (int i = 0; i < idleViews.size(); i++) {
+            if (idleViews.get(i).getContext() == context) {
+                webView = idleViews.remove(i);
+                break;
+            }
+        }
+        scheduleRefill();
+        return webView;
+    }
+
+    /**
+     * Resets the WebView and keeps it for reuse once about:blank has loaded, see {@link #onReset}.
+     *
+     * @return false when the pool is full, the caller should destroy the WebView then
+     */
+    boolean release(CustomWebViewManager.FilteringReactWebView webView) {
+        if (trimmed || (isFull() && !evictIdleView((ThemedReactContext) webView.getContext()))) {
+            return false;
+        }
+        factory.reset(webView);
+        webView.setWebViewClient(resetClient);
+        resettingViews.add(webView);
+        return true;
+    }
+
+    void clear() {
+        for (CustomWebViewManager.FilteringReactWebView idle : idleViews) {
+            idle.cleanupCallbacksAndDestroy();
+        }
+        idleViews.clear();
+        for (CustomWebViewManager.FilteringReactWebView resetting : resettingViews) {
+            resetting.cleanupCallbacksAndDestroy();
+        }
+        resettingViews.clear();
+    }
+
+    /**
+     * Destroys the pooled WebViews and stops listening to the React contexts, for a pool that is
+     * replaced or no longer used.
+     */
+    void detach() {
+        clear();
+        for (ThemedReactContext context : contexts) {
+            context.removeLifecycleEventListener(this);
+        }
+        contexts.clear();
+        if (applicationContext != null) {
+            applicationContext.unregisterComponentCallbacks(this);
+            applicationContext = null;
+        }
+        refillContext = null;
+    }
+
+    int size() {
+        return idleViews.size();
+    }
+
+    private void attach(ThemedReactContext context) {
+        if (!contexts.add(context)) {
+            return;
+        }
+        context.addLifecycleEventListener(this);
+        if (applicationContext == null) {
+            applicationContext = context.getApplicationContext();
+            applicationContext.registerComponentCallbacks(this);
+        }
+    }
+
+    private boolean isFull() {
+        return idleViews.size() + resettingViews.size() >= maxSize;
+    }
+
+    /**
+     * Makes room for a WebView of {@code context} by destroying the oldest idle one of another
+     * root view.
+     *
+     * @return false when there is none
+     */
+    private boolean evictIdleView(ThemedReactContext context) {
+        for (int i = 0; i < idleViews.size(); i++) {
+            if (idleViews.get(i).getContext() != context) {
+                idleViews.remove(i).cleanupCallbacksAndDestroy();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * about:blank replaced the previous page, so clearing the history now leaves nothing to go back to.
+     */
+    private void onReset(CustomWebViewManager.FilteringReactWebView webView) {
+        webView.setWebViewClient(null);
+        webView.clearHistory();
+        if (!contexts.contains(webView.getContext()) || trimmed || idleViews.size() >= maxSize) {
+            webView.cleanupCallbacksAndDestroy();
+            return;
+        }
+        idleViews.add(webView);
+    }
+
+    private void scheduleRefill() {
+        if (!refillScheduled && !isFull()) {
+            refillScheduled = true;
+            Looper.myQueue().addIdleHandler(refillHandler);
+        }
+    }
+
+    @Override
+    public void onHostResume() {
+        // do nothing
+    }
+
+    @Override
+    public void onHostPause() {
+        // do nothing
+    }
+
+    @Override
+    public void onHostDestroy() {
+        detach();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Idle WebViews are the first thing to give back, both in the background and when running low
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimmed = true;
+            clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimmed = true;
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // do nothing
+    }
+}
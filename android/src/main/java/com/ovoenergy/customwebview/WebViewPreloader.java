@@ -0,0 +1,87 @@
+package com.ovoenergy.customwebview;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.webkit.CookieManager;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+import com.facebook.common.logging.FLog;
+import com.facebook.react.common.ReactConstants;
+
+/**
+ * Loads and starts the WebView provider before the first WebView is mounted, so the first render of
+ * a RNCustomWebView does not block on it. The work has to happen on the UI thread, so it is done the
+ * first time that thread is idle. Runs at most once per process.
+ */
+final class WebViewPreloader {
+
+    private static boolean sStarted;
+
+    private WebViewPreloader() {
+    }
+
+    /**
+     * Safe to call from any thread.
+     */
+    static void preload(Context context, @Nullable final CustomWebViewManager.PreloadListener listener) {
+        synchronized (WebViewPreloader.class) {
+            if (sStarted) {
+                return;
+            }
+            sStarted = true;
+        }
+
+        final Context applicationContext = context.getApplicationContext();
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        warmUp(applicationContext, listener);
+                        return false;
+                    }
+                });
+            }
+        });
+    }
+
+    private static void warmUp(Context context, @Nullable CustomWebViewManager.PreloadListener listener) {
+        final long start = SystemClock.uptimeMillis();
+        final long cookieManagerMs;
+        final long userAgentMs;
+        final long webViewMs;
+        try {
+            // Each step loads more of the provider, whatever is left is paid by the throwaway WebView
+            CookieManager.getInstance();
+            final long cookieManagerEnd = SystemClock.uptimeMillis();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                WebSettings.getDefaultUserAgent(context);
+            }
+            final long userAgentEnd = SystemClock.uptimeMillis();
+            new WebView(context).destroy();
+            final long end = SystemClock.uptimeMillis();
+
+            cookieManagerMs = cookieManagerEnd - start;
+            userAgentMs = userAgentEnd - cookieManagerEnd;
+            webViewMs = end - userAgentEnd;
+        } catch (RuntimeException e) {
+            // No usable provider, e.g. it is being updated. The first WebView reports it properly.
+            FLog.w(ReactConstants.TAG, "Could not preload WebView provider", e);
+            return;
+        }
+
+        FLog.i(ReactConstants.TAG, "Preloaded WebView provider in " + (cookieManagerMs + userAgentMs + webViewMs)
+                + "ms (CookieManager " + cookieManagerMs + "ms, user agent " + userAgentMs
+                + "ms, WebView " + webViewMs + "ms)");
+        if (listener != null) {
+            listener.onWebViewPreloaded(cookieManagerMs, userAgentMs, webViewMs);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentSizeThrottleTest {
+
+    @Test
+    public void shouldReportOnlyChanges() {
+        ContentSizeThrottle throttle = new ContentSizeThrottle(0);
+
+        Assert.assertEquals(ContentSizeThrottle.REPORT, throttle.update(360, 1000, 0));
+        Assert.assertEquals(ContentSizeThrottle.UNCHANGED, throttle.update(360, 1000, 16));
+        Assert.assertEquals(ContentSizeThrottle.REPORT, throttle.update(360, 1200, 32));
+        Assert.assertEquals(ContentSizeThrottle.REPORT, throttle.update(640, 1200, 48));
+    }
+
+    @Test
+    public void shouldDelayChangesWithinTheInterval() {
+        ContentSizeThrottle throttle = new ContentSizeThrottle(100);
+
+        Assert.assertEquals(ContentSizeThrottle.REPORT, throttle.update(360, 1000, 0));
+        Assert.assertEquals(70, throttle.update(360, 1200, 30));
+        Assert.assertEquals(ContentSizeThrottle.REPORT, throttle.update(360, 1300, 100));
+        Assert.assertEquals(ContentSizeThrottle.UNCHANGED, throttle.update(360, 1300, 150));
+    }
+
+    @Test
+    public void shouldReportAgainAfterReset() {
+        ContentSizeThrottle throttle = new ContentSizeThrottle(100);
+        throttle.update(360, 1000, 0);
+
+        throttle.reset();
+
+        Assert.assertEquals(ContentSizeThrottle.REPORT, throttle.update(360, 1000, 10));
+    }
+}
@@ -0,0 +1,74 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class DataUrlDecoderTest {
+
+    @Test
+    public void shouldDecodeBase64DataUrls() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = DataUrlDecoder.decode("data:text/csv;base64,YSxiLGMKMSwyLDM=", out);
+
+        Assert.assertEquals("a,b,c\n1,2,3", out.toString("UTF-8"));
+        Assert.assertEquals(11, written);
+        Assert.assertEquals("text/csv", DataUrlDecoder.getMimeType("data:text/csv;base64,YSxiLGMKMSwyLDM="));
+    }
+
+    @Test
+    public void shouldDecodePayloadsLargerThanTheBuffer() throws IOException {
+        byte[] payload = new byte[Base64StreamDecoder.BUFFER_SIZE * 3 + 7];
+        new Random(1).nextBytes(payload);
+        String url = "data:application/pdf;base64," + encode(payload);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataUrlDecoder.decode(url, out);
+
+        Assert.assertArrayEquals(payload, out.toByteArray());
+    }
+
+    @Test
+    public void shouldDecodeSeparatelyPaddedChunks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64StreamDecoder decoder = new Base64StreamDecoder(out);
+        decoder.write("YQ==");
+        decoder.write("Yg==");
+        decoder.write("Y2Q=");
+        decoder.finish();
+
+        Assert.assertEquals("abcd", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void shouldDecodePercentEncodedDataUrls() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataUrlDecoder.decode("data:,name%2Cvalue%0A%C2%A3%20caf\u00e9", out);
+
+        Assert.assertEquals("name,value\n\u00a3 caf\u00e9", out.toString("UTF-8"));
+        Assert.assertEquals("text/plain", DataUrlDecoder.getMimeType("data:,x"));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectInvalidBase64() throws IOException {
+        DataUrlDecoder.decode("data:text/plain;base64,a$b", new ByteArrayOutputStream());
+    }
+
+    private static String encode(byte[] bytes) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < bytes.length; i += 3) {
+            int b0 = bytes[i] & 0xFF;
+            int b1 = i + 1 < bytes.length ? bytes[i + 1] & 0xFF : 0;
+            int b2 = i + 2 < bytes.length ? bytes[i + 2] & 0xFF : 0;
+            builder.append(alphabet.charAt(b0 >> 2));
+            builder.append(alphabet.charAt(((b0 & 3) << 4) | (b1 >> 4)));
+            builder.append(i + 1 < bytes.length ? alphabet.charAt(((b1 & 15) << 2) | (b2 >> 6)) : '=');
+            builder.append(i + 2 < bytes.length ? alphabet.charAt(b2 & 63) : '=');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package com.ovoenergy.customwebview;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DownloadCacheTest {
+
+    private static final Map<String, String> HEADERS = Collections.singletonMap("Cookie", "session=1");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private volatile String etag = "\"v1\"";
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String lastMethod;
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/statement.pdf", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                lastMethod = exchange.getRequestMethod();
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = ("statement " + etag).getBytes(Charset.forName("UTF-8"));
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/statement.pdf";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldReuseUnchangedDownloads() throws IOException {
+        DownloadCache cache = new DownloadCache(new File(folder.getRoot(), "index"));
+
+        DownloadCache.Lookup validators = DownloadCache.fetchValidators(url, HEADERS);
+        Assert.assertNull(validators.file);
+        Assert.assertEquals("\"v1\"", validators.etag);
+
+        File file = writeDownload("statement \"v1\"");
+        cache.record(url, file, validators);
+
+        DownloadCache.Lookup second = cache.lookup(url, HEADERS);
+        Assert.assertEquals(file.getAbsolutePath(), second.file.getAbsolutePath());
+        Assert.assertEquals("Revalidated without the body", "HEAD", lastMethod);
+    }
+
+    @Test
+    public void shouldDownloadAgainWhenTheServerCopyChanged() throws IOException {
+        DownloadCache cache = new DownloadCache(new File(folder.getRoot(), "index"));
+        cache.record(url, writeDownload("statement \"v1\""), DownloadCache.fetchValidators(url, HEADERS));
+
+        etag = "\"v2\"";
+        DownloadCache.Lookup lookup = cache.lookup(url, HEADERS);
+
+        Assert.assertNull(lookup.file);
+        Assert.assertFalse(lookup.hasValidator());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldNotRequestUrlsWithoutAnEntry() {
+        DownloadCache cache = new DownloadCache(new File(folder.getRoot(), "index"));
+
+        Assert.assertSame(DownloadCache.Lookup.NONE, cache.lookup(url, HEADERS));
+        Assert.assertEquals(0, requests.get());
+    }
+
+    @Test
+    public void shouldDownloadAgainWhenTheLocalCopyChanged() throws IOException {
+        DownloadCache cache = new DownloadCache(new File(folder.getRoot(), "index"));
+        File file = writeDownload("statement \"v1\"");
+        cache.record(url, file, DownloadCache.fetchValidators(url, HEADERS));
+
+        // Same length, different content
+        Files.write(file.toPath(), "statement \"x1\"".getBytes(Charset.forName("UTF-8")));
+        file.setLastModified(file.lastModified() + 2000);
+
+        Assert.assertNull(cache.lookup(url, HEADERS).file);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldPersistTheIndex() throws IOException {
+        File index = new File(folder.getRoot(), "index");
+        DownloadCache cache = new DownloadCache(index);
+        File file = writeDownload("statement \"v1\"");
+        cache.record(url, file, DownloadCache.fetchValidators(url, HEADERS));
+
+        DownloadCache reloaded = new DownloadCache(index);
+
+        Assert.assertEquals(file.getAbsolutePath(), reloaded.lookup(url, HEADERS).file.getAbsolutePath());
+    }
+
+    @Test
+    public void shouldNotRecordDownloadsWithoutValidators() throws IOException {
+        DownloadCache cache = new DownloadCache(new File(folder.getRoot(), "index"));
+
+        cache.record(url, writeDownload("statement"), DownloadCache.Lookup.NONE);
+
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldHashFiles() throws IOException {
+        File file = folder.newFile("empty");
+
+        Assert.assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", DownloadCache.sha256(file));
+    }
+
+    private File writeDownload(String content) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(Charset.forName("UTF-8")));
+        return file;
+    }
+}
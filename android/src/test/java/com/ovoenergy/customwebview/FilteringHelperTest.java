@@ -8,7 +8,10 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class FilteringHelperTest {
     List<Object> filterUrls = new ArrayList<>();
@@ -43,4 +46,105 @@ public class FilteringHelperTest {
         Assert.assertEquals("Should check host, not domain", false, myHelper.shouldOpenInternally("https://apps.duckduckgo.com"));
     }
 
+    @Test
+    public void shouldMatchWildcardHosts() {
+        myHelper.setOpenInternallyHosts(new ArrayList<Object>(Arrays.asList("*.example.com", "partner.co.uk")));
+
+        Assert.assertEquals("Subdomain", true, myHelper.shouldOpenInternally("https://app.example.com/path"));
+        Assert.assertEquals("Nested subdomain", true, myHelper.shouldOpenInternally("https://a.b.example.com"));
+        Assert.assertEquals("Case insensitive", true, myHelper.shouldOpenInternally("https://App.Example.COM"));
+        Assert.assertEquals("Exact host", true, myHelper.shouldOpenInternally("https://partner.co.uk"));
+
+        Assert.assertEquals("Wildcard excludes apex", false, myHelper.shouldOpenInternally("https://example.com"));
+        Assert.assertEquals("Label boundary", false, myHelper.shouldOpenInternally("https://badexample.com"));
+        Assert.assertEquals("Exact host excludes subdomain", false, myHelper.shouldOpenInternally("https://www.partner.co.uk"));
+    }
+
+    @Test
+    public void shouldNotThrowOnMalformedUrls() {
+        Assert.assertEquals("Unescaped characters", true, myHelper.shouldOpenInternally("https://duckduckgo.com/?q=a b|c"));
+        Assert.assertEquals("Userinfo", false, myHelper.shouldOpenInternally("https://duckduckgo.com@facebook.com/"));
+        Assert.assertEquals("No host", false, myHelper.shouldOpenInternally("not a url"));
+    }
+
+    @Test
+    public void shouldApplyRoutingRulesBeforeOpenInternally() {
+        myHelper.setRoutingRules(Arrays.<Object>asList(
+                rule("https://partner.com/checkout/*", "internal"),
+                rule("https://partner.com/*", "customTab"),
+                rule("https://duckduckgo.com/*", "external")));
+
+        Assert.assertEquals(NavigationRoute.INTERNAL, route("https://partner.com/checkout/pay"));
+        Assert.assertEquals(NavigationRoute.CUSTOM_TAB, route("https://partner.com/home"));
+        Assert.assertEquals(NavigationRoute.EXTERNAL, route("https://duckduckgo.com/"));
+        Assert.assertEquals("Falls back to openInternally", NavigationRoute.INTERNAL, route("https://help.duckduckgo.com/"));
+        Assert.assertEquals("Non web links", NavigationRoute.EXTERNAL, route("mailto:someone@example.com"));
+    }
+
+    @Test
+    public void shouldSkipMalformedRoutingRules() {
+        List<String> skipped = myHelper.setRoutingRules(Arrays.<Object>asList(
+                rule("https://partner.com/*", "somewhere"),
+                "https://partner.com/*",
+                rule(null, "external"),
+                rule("https://duckduckgo.com/*", "external")));
+
+        Assert.assertEquals(3, skipped.size());
+        Assert.assertEquals(NavigationRoute.EXTERNAL, route("https://duckduckgo.com/"));
+        Assert.assertEquals("Falls back to openInternally", NavigationRoute.INTERNAL, route("https://help.duckduckgo.com/"));
+    }
+
+    @Test
+    public void shouldCompileOnlyTheLatestChangedBlocklist() {
+        final List<Runnable> tasks = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+
+        myHelper.setBlockedHosts(new ArrayList<Object>(Arrays.asList("ads.example.com")), executor);
+        myHelper.setBlockedHosts(new ArrayList<Object>(Arrays.asList("ads.example.com")), executor);
+        Assert.assertEquals("Equal list", 1, tasks.size());
+        Assert.assertFalse("Not compiled yet", myHelper.isBlockingEnabled());
+
+        myHelper.setBlockedHosts(new ArrayList<Object>(Arrays.asList("tracker.example.com")), executor);
+        tasks.get(0).run();
+        Assert.assertFalse("Replaced list", myHelper.isBlockingEnabled());
+        tasks.get(1).run();
+        Assert.assertTrue(myHelper.shouldBlock(scan("https://tracker.example.com/pixel")));
+        Assert.assertFalse(myHelper.shouldBlock(scan("https://ads.example.com/")));
+
+        myHelper.setBlockedHosts(null, executor);
+        Assert.assertEquals(2, tasks.size());
+        Assert.assertFalse(myHelper.isBlockingEnabled());
+    }
+
+    private static UrlScanner scan(String url) {
+        UrlScanner scanner = new UrlScanner();
+        scanner.scan(url);
+        return scanner;
+    }
+
+    private NavigationRoute route(String url) {
+        UrlScanner scanner = new UrlScanner();
+        scanner.scan(url);
+        return myHelper.route(scanner);
+    }
+
+    private static Map<String, Object> rule(String pattern, String action) {
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("pattern", pattern);
+        rule.put("action", action);
+        return rule;
+    }
+
+    @Test
+    public void shouldOpenEverythingInternallyWithoutList() {
+        myHelper.setOpenInternallyHosts(null);
+
+        Assert.assertEquals("Empty list", true, myHelper.shouldOpenInternally("https://facebook.com"));
+    }
+
 }
@@ -0,0 +1,57 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class HostBlocklistTest {
+
+    @Test
+    public void shouldBlockHostsAndTheirSubdomains() {
+        List<Object> hosts = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            hosts.add("tracker" + i + ".example.net");
+        }
+        hosts.add("ads.partner.com");
+        HostBlocklist blocklist = HostBlocklist.compile(hosts);
+
+        Assert.assertEquals("Size", 100001, blocklist.size());
+        Assert.assertTrue("Exact host", blocklist.isBlocked("tracker42.example.net"));
+        Assert.assertTrue("Subdomain", blocklist.isBlocked("cdn.ads.partner.com"));
+        Assert.assertTrue("Case insensitive", blocklist.isBlocked("ADS.Partner.com"));
+
+        Assert.assertFalse("Parent domain", blocklist.isBlocked("partner.com"));
+        Assert.assertFalse("Label boundary", blocklist.isBlocked("badads.partner.com"));
+        Assert.assertFalse("Not listed", blocklist.isBlocked("tracker100000.example.net"));
+    }
+
+    @Test
+    public void shouldCheckHostInsideUrl() {
+        List<Object> hosts = new ArrayList<>();
+        hosts.add("tracker.com");
+        HostBlocklist blocklist = HostBlocklist.compile(hosts);
+
+        UrlScanner scanner = new UrlScanner();
+        scanner.scan("https://pixel.tracker.com/p.gif?id=1");
+        Assert.assertTrue(blocklist.isBlocked(scanner.getUrl(), scanner.getHostStart(), scanner.getHostEnd()));
+    }
+
+    @Test
+    public void shouldRarelyReportFalsePositives() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("host" + i + ".com");
+        }
+
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            String host = "host" + i + ".com";
+            if (filter.mightContain(host, 0, host.length())) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < 300);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class MessageBufferTest {
+
+    @Test
+    public void shouldScheduleOneFlushPerBatch() {
+        MessageBuffer buffer = new MessageBuffer(10, 5, 1000);
+
+        Assert.assertEquals(MessageBuffer.Offer.SCHEDULE_FLUSH, buffer.offer("a"));
+        Assert.assertEquals(MessageBuffer.Offer.QUEUED, buffer.offer("b"));
+
+        MessageBuffer.Batch batch = buffer.drain(0);
+        Assert.assertEquals(Arrays.asList("a", "b"), batch.messages);
+        Assert.assertEquals(0, batch.dropped);
+        Assert.assertFalse(buffer.rescheduleIfPending());
+    }
+
+    @Test
+    public void shouldFlushEarlyWhenABatchIsFull() {
+        MessageBuffer buffer = new MessageBuffer(10, 3, 1000);
+
+        buffer.offer("a");
+        buffer.offer("b");
+
+        Assert.assertEquals(MessageBuffer.Offer.FLUSH_NOW, buffer.offer("c"));
+    }
+
+    @Test
+    public void shouldHoldBackBatchesUntilAcknowledged() {
+        MessageBuffer buffer = new MessageBuffer(10, 2, 1000);
+        buffer.offer("a");
+        buffer.offer("b");
+        buffer.offer("c");
+
+        Assert.assertEquals(Arrays.asList("a", "b"), buffer.drain(0).messages);
+        Assert.assertTrue(buffer.rescheduleIfPending());
+        Assert.assertNull(buffer.drain(16));
+
+        buffer.acknowledge();
+        Assert.assertEquals(Arrays.asList("c"), buffer.drain(32).messages);
+    }
+
+    @Test
+    public void shouldStopWaitingForLostAcknowledgements() {
+        MessageBuffer buffer = new MessageBuffer(10, 2, 1000);
+        buffer.offer("a");
+        buffer.drain(0);
+        buffer.offer("b");
+
+        Assert.assertNull(buffer.drain(999));
+        Assert.assertEquals(Arrays.asList("b"), buffer.drain(1000).messages);
+    }
+
+    @Test
+    public void shouldCountDroppedMessages() {
+        MessageBuffer buffer = new MessageBuffer(2, 2, 1000);
+        buffer.offer("a");
+        buffer.offer("b");
+
+        Assert.assertEquals(MessageBuffer.Offer.DROPPED, buffer.offer("c"));
+        Assert.assertEquals(MessageBuffer.Offer.DROPPED, buffer.offer("d"));
+
+        MessageBuffer.Batch batch = buffer.drain(0);
+        Assert.assertEquals(Arrays.asList("a", "b"), batch.messages);
+        Assert.assertEquals(2, batch.dropped);
+
+        buffer.acknowledge();
+        Assert.assertNull(buffer.drain(0));
+    }
+}
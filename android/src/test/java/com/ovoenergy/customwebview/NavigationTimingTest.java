@@ -0,0 +1,53 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NavigationTimingTest {
+
+    private static final String URL = "https://portal.example.com/";
+
+    @Test
+    public void shouldMeasureFromTheStart() {
+        NavigationTiming timing = new NavigationTiming();
+
+        timing.start(URL, 1000, 1500000000000L);
+        timing.commitVisible(1200);
+        timing.commitVisible(1300);
+
+        Assert.assertTrue(timing.finish(URL, 1450));
+        Assert.assertEquals(1500000000000L, timing.getStartTime());
+        Assert.assertEquals(200, timing.getCommitVisibleTime());
+        Assert.assertEquals(450, timing.getFinishTime());
+    }
+
+    @Test
+    public void shouldKeepTheFirstStartOfRedirects() {
+        NavigationTiming timing = new NavigationTiming();
+
+        timing.start("http://portal.example.com/", 1000, 0);
+        timing.start(URL, 1100, 100);
+
+        Assert.assertTrue(timing.finish(URL, 1400));
+        Assert.assertEquals(URL, timing.getUrl());
+        Assert.assertEquals(0, timing.getStartTime());
+        Assert.assertEquals(400, timing.getFinishTime());
+        Assert.assertEquals(NavigationTiming.NONE, timing.getCommitVisibleTime());
+    }
+
+    @Test
+    public void shouldReportEachNavigationOnce() {
+        NavigationTiming timing = new NavigationTiming();
+        Assert.assertFalse(timing.finish(URL, 1000));
+
+        timing.start(URL, 1000, 0);
+        Assert.assertTrue(timing.finish(URL, 1100));
+        Assert.assertFalse(timing.finish(URL, 1200));
+        timing.commitVisible(1300);
+        Assert.assertEquals(NavigationTiming.NONE, timing.getCommitVisibleTime());
+
+        timing.start(URL, 2000, 0);
+        Assert.assertTrue(timing.finish(URL, 2050));
+        Assert.assertEquals(50, timing.getFinishTime());
+    }
+}
@@ -0,0 +1,152 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class OfflineBundleTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String INDEX = "<html><body>offline</body></html>";
+    private static final String SCRIPT = "console.log('offline');";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.newFile("app.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            putStored(out, "index.html", INDEX.getBytes(UTF_8));
+            out.putNextEntry(new ZipEntry("static/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("static/app.js"));
+            out.write(SCRIPT.getBytes(UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("static/my styles.css"));
+            out.write("body{}".getBytes(UTF_8));
+            out.closeEntry();
+            putStored(out, "static/vendor.js.gz", gzip("var vendor;"));
+            out.setComment("built by the test");
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void shouldServeStoredAndDeflatedEntries() throws IOException {
+        OfflineBundle bundle = OfflineBundle.open(file);
+
+        OfflineBundle.Entry index = bundle.find("/index.html");
+        Assert.assertEquals("text/html", index.mimeType);
+        Assert.assertEquals(INDEX, read(bundle.open(index)));
+
+        OfflineBundle.Entry script = bundle.find("/static/app.js?v=2#top");
+        Assert.assertEquals("application/javascript", script.mimeType);
+        Assert.assertTrue(script.isText());
+        Assert.assertEquals(SCRIPT, read(bundle.open(script)));
+    }
+
+    @Test
+    public void shouldResolveDirectoriesAndEncodedNames() throws IOException {
+        OfflineBundle bundle = OfflineBundle.open(file);
+
+        Assert.assertEquals(INDEX, read(bundle.open(bundle.find("/"))));
+        Assert.assertEquals(INDEX, read(bundle.open(bundle.find(""))));
+        Assert.assertEquals("body{}", read(bundle.open(bundle.find("/static/my%20styles.css"))));
+        Assert.assertNull(bundle.find("/static/"));
+        Assert.assertNull(bundle.find("/missing.js"));
+    }
+
+    @Test
+    public void shouldServeGzippedEntriesUnderTheirOwnName() throws IOException {
+        OfflineBundle bundle = OfflineBundle.open(file);
+
+        OfflineBundle.Entry vendor = bundle.find("/static/vendor.js");
+        Assert.assertEquals("application/javascript", vendor.mimeType);
+        Assert.assertEquals("var vendor;", read(bundle.open(vendor)));
+        // Directories are not entries, the .gz file itself still is
+        Assert.assertEquals(5, bundle.size());
+    }
+
+    @Test
+    public void shouldReuseOpenBundlesUntilTheFileChanges() throws IOException {
+        File copies = folder.newFolder("copies");
+        OfflineBundle bundle = OfflineBundle.get(file, copies);
+        Assert.assertSame(bundle, OfflineBundle.get(file, copies));
+
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+
+        Assert.assertTrue(bundle.isStale());
+        Assert.assertNotSame(bundle, OfflineBundle.get(file, copies));
+        Assert.assertEquals("Older copies are deleted", 1, copies.list().length);
+    }
+
+    @Test
+    public void shouldKeepServingWhileTheFileIsOverwrittenInPlace() throws IOException {
+        OfflineBundle bundle = OfflineBundle.get(file, folder.newFolder("copies"));
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("truncated".getBytes(UTF_8));
+        out.close();
+
+        Assert.assertEquals(SCRIPT, read(bundle.open(bundle.find("/static/app.js"))));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectFilesThatAreNotZips() throws IOException {
+        File notZip = folder.newFile("index.html");
+        FileOutputStream out = new FileOutputStream(notZip);
+        out.write(INDEX.getBytes(UTF_8));
+        out.close();
+
+        OfflineBundle.open(notZip);
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(content.getBytes(UTF_8));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return new String(out.toByteArray(), UTF_8);
+    }
+}
@@ -0,0 +1,193 @@
+package com.ovoenergy.customwebview;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RangedDownloaderTest {
+
+    private static final int SIZE = 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] content = new byte[SIZE];
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final Map<String, String> lastHeaders = Collections.synchronizedMap(new HashMap<String, String>());
+    private volatile boolean supportRanges = true;
+    // Connections are dropped after sending this many bytes of a range, -1 to send them all
+    private volatile int failAfterBytes = -1;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(7).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file.zip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        executor = Executors.newCachedThreadPool();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file.zip";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDownloadRangesInParallel() throws IOException {
+        File destination = new File(folder.getRoot(), "file.zip");
+        final AtomicLong progress = new AtomicLong();
+
+        RangedDownloader downloader = new RangedDownloader(executor, 4, 1024);
+        boolean downloaded = downloader.download(url, headers(), destination,
+                new RangedDownloader.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytesDownloaded, long totalBytes) {
+                        progress.set(bytesDownloaded);
+                        Assert.assertEquals(SIZE, totalBytes);
+                    }
+                });
+
+        Assert.assertTrue(downloaded);
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        Assert.assertEquals(SIZE, progress.get());
+        // The probe plus one request per range
+        Assert.assertEquals(5, rangeRequests.get());
+        Assert.assertEquals("session=1", lastHeaders.get("Cookie"));
+        Assert.assertEquals("TestAgent", lastHeaders.get("User-agent"));
+        Assert.assertFalse(new File(destination.getPath() + RangedDownloader.STATE_SUFFIX).exists());
+        // The validators the ranges were tied to, for the download index
+        Assert.assertEquals("\"v1\"", downloader.getEtag());
+    }
+
+    @Test
+    public void shouldLeaveServersWithoutRangesToTheCaller() throws IOException {
+        supportRanges = false;
+        File destination = new File(folder.getRoot(), "file.zip");
+
+        Assert.assertFalse(new RangedDownloader(executor, 4, 1024).download(url, headers(), destination, null));
+        Assert.assertFalse(destination.exists());
+    }
+
+    @Test
+    public void shouldLeaveSmallFilesToTheCaller() throws IOException {
+        File destination = new File(folder.getRoot(), "file.zip");
+
+        Assert.assertFalse(new RangedDownloader(executor, 4, SIZE + 1).download(url, headers(), destination, null));
+    }
+
+    @Test
+    public void shouldResumeAfterAnInterruption() throws IOException {
+        File destination = new File(folder.getRoot(), "file.zip");
+        RangedDownloader downloader = new RangedDownloader(executor, 2, 1024);
+
+        failAfterBytes = 100 * 1024;
+        try {
+            downloader.download(url, headers(), destination, null);
+            Assert.fail("Download should have been interrupted");
+        } catch (IOException expected) {
+            // Every attempt was cut short
+        }
+        Assert.assertTrue(new File(destination.getPath() + RangedDownloader.STATE_SUFFIX).exists());
+
+        failAfterBytes = -1;
+        bytesServed.set(0);
+        Assert.assertTrue(downloader.download(url, headers(), destination, null));
+
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        // Only what was missing was fetched again, apart from the probe's single byte
+        Assert.assertTrue("Served " + bytesServed.get(), bytesServed.get() < SIZE - 2 * 100 * 1024);
+    }
+
+    @Test
+    public void shouldParseContentRange() {
+        Assert.assertEquals(12345, RangedDownloader.parseTotalBytes("bytes 0-0/12345"));
+        Assert.assertEquals(-1, RangedDownloader.parseTotalBytes("bytes 0-0/*"));
+        Assert.assertEquals(-1, RangedDownloader.parseTotalBytes(null));
+    }
+
+    @Test
+    public void shouldSplitIntoContiguousRanges() {
+        RangedDownloader.Range[] ranges = RangedDownloader.split(10, 3);
+
+        Assert.assertEquals(3, ranges.length);
+        Assert.assertEquals(0, ranges[0].start);
+        Assert.assertEquals(3, ranges[0].end);
+        Assert.assertEquals(4, ranges[1].start);
+        Assert.assertEquals(8, ranges[2].start);
+        Assert.assertEquals(9, ranges[2].end);
+    }
+
+    private static Map<String, String> headers() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cookie", "session=1");
+        headers.put("User-Agent", "TestAgent");
+        return headers;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        lastHeaders.put("Cookie", exchange.getRequestHeaders().getFirst("Cookie"));
+        lastHeaders.put("User-agent", exchange.getRequestHeaders().getFirst("User-Agent"));
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0;
+        int end = SIZE - 1;
+        int status = 200;
+        if (supportRanges && range != null) {
+            rangeRequests.incrementAndGet();
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            end = Integer.parseInt(bounds[1]);
+            status = 206;
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + SIZE);
+        }
+
+        int length = end - start + 1;
+        exchange.sendResponseHeaders(status, length);
+        OutputStream out = exchange.getResponseBody();
+        int toSend = failAfterBytes >= 0 && length > 1 ? Math.min(length, failAfterBytes) : length;
+        out.write(content, start, toSend);
+        bytesServed.addAndGet(toSend);
+        if (toSend < length) {
+            // Drop the connection half way through
+            exchange.close();
+            return;
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ResponseCacheTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Map<String, String> HEADERS = Collections.singletonMap("Access-Control-Allow-Origin", "*");
+    private static final String APP_JS = "https://cdn.example.com/app.js";
+    private static final String APP_CSS = "https://cdn.example.com/app.css";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldServeResponsesReadToTheEnd() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), 1024);
+
+        Assert.assertEquals("console.log(1)", read(cache.store(APP_JS, "text/javascript", "utf-8", HEADERS, 1000,
+                body("console.log(1)"))));
+
+        ResponseCache.Response response = cache.get(APP_JS, 999);
+        Assert.assertEquals("text/javascript", response.mimeType);
+        Assert.assertEquals("utf-8", response.encoding);
+        Assert.assertEquals(HEADERS, response.headers);
+        Assert.assertEquals("console.log(1)", read(response.body));
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void shouldNotCacheResponsesClosedEarly() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), 1024);
+
+        InputStream in = cache.store(APP_JS, "text/javascript", null, HEADERS, 1000, body("console.log(1)"));
+        in.read(new byte[4]);
+        in.close();
+
+        Assert.assertNull(cache.get(APP_JS, 0));
+        Assert.assertEquals(1, cache.getMisses());
+        // The partial copy is gone
+        Assert.assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void shouldDropExpiredResponses() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), 1024);
+        read(cache.store(APP_JS, "text/javascript", null, HEADERS, 1000, body("console.log(1)")));
+
+        Assert.assertNull(cache.get(APP_JS, 1000));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedResponses() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), 20);
+        read(cache.store(APP_JS, "text/javascript", null, HEADERS, 1000, body("0123456789")));
+        read(cache.store(APP_CSS, "text/css", null, HEADERS, 1000, body("0123456789")));
+        read(cache.get(APP_JS, 0).body);
+
+        read(cache.store("https://cdn.example.com/font.woff", "font/woff", null, HEADERS, 1000, body("01234")));
+
+        Assert.assertNotNull(cache.get(APP_JS, 0));
+        Assert.assertNull(cache.get(APP_CSS, 0));
+        Assert.assertEquals(15, cache.getTotalBytes());
+    }
+
+    @Test
+    public void shouldCheckForEntriesWithoutCountingThem() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.getRoot(), 1024);
+        read(cache.store(APP_JS, "text/javascript", null, HEADERS, 1000, body("console.log(1)")));
+
+        Assert.assertTrue(cache.contains(APP_JS, 999));
+        Assert.assertFalse(cache.contains(APP_JS, 1000));
+        Assert.assertFalse(cache.contains(APP_CSS, 0));
+        Assert.assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    public void shouldReloadTheIndex() throws IOException {
+        Map<String, String> headers = new HashMap<>(HEADERS);
+        headers.put("Cache-Control", "max-age=60");
+        read(new ResponseCache(folder.getRoot(), 1024).store(APP_CSS, "text/css", "utf-8", headers, 1000,
+                body("body{}")));
+        new File(folder.getRoot(), "orphan.tmp").createNewFile();
+
+        ResponseCache reloaded = new ResponseCache(folder.getRoot(), 1024);
+
+        ResponseCache.Response response = reloaded.get(APP_CSS, 0);
+        Assert.assertEquals(headers, response.headers);
+        Assert.assertEquals("body{}", read(response.body));
+        Assert.assertFalse(new File(folder.getRoot(), "orphan.tmp").exists());
+    }
+
+    @Test
+    public void shouldMatchTtlRules() {
+        Map<String, Object> scripts = new HashMap<>();
+        scripts.put("pattern", "https://cdn.example.com/*.js");
+        scripts.put("ttl", 60.0);
+        Map<String, Object> everything = new HashMap<>();
+        everything.put("pattern", "https://cdn.example.com/*");
+        everything.put("ttl", 1.5);
+
+        ResponseCacheRules rules = ResponseCacheRules.compile(Arrays.asList(scripts, everything));
+
+        Assert.assertEquals(60000, rules.getTtlMs(APP_JS));
+        Assert.assertEquals(1500, rules.getTtlMs(APP_CSS));
+        Assert.assertEquals(-1, rules.getTtlMs("https://example.com/app.js"));
+    }
+
+    @Test
+    public void shouldSkipMalformedTtlRules() {
+        Map<String, Object> noTtl = new HashMap<>();
+        noTtl.put("pattern", "https://cdn.example.com/*.js");
+        Map<String, Object> scripts = new HashMap<>();
+        scripts.put("pattern", "https://cdn.example.com/*.js");
+        scripts.put("ttl", 60.0);
+
+        ResponseCacheRules rules = ResponseCacheRules.compile(Arrays.asList(noTtl, "https://cdn.example.com/*", scripts));
+
+        Assert.assertEquals(2, rules.getSkippedRules().size());
+        Assert.assertEquals(60000, rules.getTtlMs(APP_JS));
+    }
+
+    private static InputStream body(String body) {
+        return new ByteArrayInputStream(body.getBytes(UTF_8));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return new String(out.toByteArray(), UTF_8);
+    }
+}
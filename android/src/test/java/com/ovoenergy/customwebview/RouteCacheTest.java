@@ -0,0 +1,55 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class RouteCacheTest {
+    private FilteringHelper filteringHelper;
+    private RouteCache routeCache;
+
+    @Before
+    public void init() {
+        filteringHelper = new FilteringHelper(new ArrayList<Object>(Arrays.asList("duckduckgo.com")));
+        routeCache = new RouteCache(2);
+    }
+
+    private NavigationRoute route(String url) {
+        UrlScanner scanner = new UrlScanner();
+        scanner.scan(url);
+        return routeCache.route(filteringHelper, scanner);
+    }
+
+    @Test
+    public void shouldCacheRoutesByHost() {
+        Assert.assertEquals(NavigationRoute.INTERNAL, route("https://duckduckgo.com/a"));
+        Assert.assertEquals(NavigationRoute.INTERNAL, route("https://DuckDuckGo.com/b"));
+        Assert.assertEquals(NavigationRoute.CUSTOM_TAB, route("https://facebook.com"));
+        Assert.assertEquals(NavigationRoute.EXTERNAL, route("tel:123"));
+
+        Assert.assertEquals("Hits", 1, routeCache.getHitCount());
+        Assert.assertEquals("Misses", 3, routeCache.getMissCount());
+        Assert.assertEquals("Bounded", 2, routeCache.size());
+    }
+
+    @Test
+    public void shouldNotCacheAboutUrls() {
+        Assert.assertEquals(NavigationRoute.CUSTOM_TAB, route("about:blank"));
+        Assert.assertEquals(NavigationRoute.EXTERNAL, route("about:srcdoc"));
+
+        Assert.assertEquals("Not cached", 0, routeCache.size());
+    }
+
+    @Test
+    public void shouldClearWhenOpenInternallyChanges() {
+        Assert.assertEquals(NavigationRoute.CUSTOM_TAB, route("https://facebook.com"));
+
+        filteringHelper.setOpenInternallyHosts(new ArrayList<Object>(Arrays.asList("facebook.com")));
+
+        Assert.assertEquals(NavigationRoute.INTERNAL, route("https://facebook.com"));
+        Assert.assertEquals("Misses", 2, routeCache.getMissCount());
+    }
+}
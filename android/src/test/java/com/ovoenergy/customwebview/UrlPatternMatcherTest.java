@@ -0,0 +1,58 @@
+package com.ovoenergy.customwebview;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class UrlPatternMatcherTest {
+
+    @Test
+    public void shouldReturnFirstMatchingPattern() {
+        UrlPatternMatcher matcher = UrlPatternMatcher.compile(Arrays.asList(
+                "https://partner.com/checkout/*",
+                "https://partner.com/*",
+                "tel:*"));
+
+        Assert.assertEquals("Most specific rule first", 0, matcher.match("https://partner.com/checkout/basket"));
+        Assert.assertEquals("Host rule", 1, matcher.match("https://partner.com/about"));
+        Assert.assertEquals("Scheme rule", 2, matcher.match("tel:0800123456"));
+        Assert.assertEquals("No match", -1, matcher.match("https://other.com/"));
+        Assert.assertEquals("Anchored", -1, matcher.match("https://partner.com"));
+    }
+
+    @Test
+    public void shouldKeepAuthorityWildcardsInsideTheAuthority() {
+        UrlPatternMatcher matcher = UrlPatternMatcher.compile(Arrays.asList("https://*.partner.com/*"));
+
+        Assert.assertEquals("Subdomain", 0, matcher.match("https://app.partner.com/x"));
+        Assert.assertEquals("Case insensitive host", 0, matcher.match("HTTPS://App.Partner.COM/x"));
+        Assert.assertEquals("Path", -1, matcher.match("https://evil.com/.partner.com/"));
+        Assert.assertEquals("Userinfo", -1, matcher.match("https://evil.com@x.partner.com/"));
+    }
+
+    @Test
+    public void shouldMatchPathsCaseSensitively() {
+        UrlPatternMatcher matcher = UrlPatternMatcher.compile(Arrays.asList("https://partner.com/Checkout*"));
+
+        Assert.assertEquals(0, matcher.match("https://PARTNER.com/Checkout?step=1"));
+        Assert.assertEquals(-1, matcher.match("https://partner.com/checkout"));
+    }
+
+    @Test
+    public void shouldMatchAcrossManyPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            patterns.add("https://host" + i + ".example.com/*");
+        }
+        patterns.add("https://*.example.com/\u00fcn\u00efcode/*");
+        UrlPatternMatcher matcher = UrlPatternMatcher.compile(patterns);
+
+        Assert.assertEquals(0, matcher.match("https://host0.example.com/"));
+        Assert.assertEquals(137, matcher.match("https://host137.example.com/a/b"));
+        Assert.assertEquals(200, matcher.match("https://other.example.com/\u00fcn\u00efcode/x"));
+        Assert.assertEquals(-1, matcher.match("https://host200.example.com/"));
+    }
+}
@@ -64,7 +64,47 @@ class WebView extends React.Component {
 		contentInset: EdgeInsetsPropType,
 		onNavigationStateChange: PropTypes.func,
 		onMessage: PropTypes.func,
+		/**
+	 * Deliver messages from the page to onMessage in batches, at most one batch per frame.
+	 * Use for pages that post many messages, e.g. telemetry.
+	 */
+		messageBatching: PropTypes.bool,
+		/**
+	 * Exchange postMessage/onMessage messages over a MessageChannel port instead of the
+	 * JavaScript interface. Android 6.0+ only, older devices keep using the interface.
+	 */
+		messagePort: PropTypes.bool,
+		/**
+	 * With messageBatching, called with the number of messages the page posted while the
+	 * buffer was full
+	 */
+		onMessagesDropped: PropTypes.func,
 		onContentSizeChange: PropTypes.func,
+		/**
+	 * Minimum time in ms between two onContentSizeChange calls. By default the size is reported
+	 * at most once per frame, and only when it changed.
+	 */
+		contentSizeChangeInterval: PropTypes.number,
+		/**
+	 * Leave title, canGoBack and canGoForward out of navigation events, for pages that change
+	 * history very often
+	 */
+		leanNavigationEvents: PropTypes.bool,
+		/**
+	 * Called periodically while downloads started by this WebView are in flight, with
+	 * `nativeEvent.downloads`: [{id, url, status, bytesDownloaded, totalBytes}]
+	 */
+		onDownloadProgress: PropTypes.func,
+		/**
+	 * Called once per download with `nativeEvent`: {id, url, status, localUri, reason}, where
+	 * status is one of 'successful', 'failed' or 'cancelled'
+	 */
+		onDownloadComplete: PropTypes.func,
+		/**
+	 * Called once per navigation with native load timings and the page's Navigation Timing,
+	 * First Contentful Paint and Largest Contentful Paint. Nothing is measured without it.
+	 */
+		onPerformanceReport: PropTypes.func,
 		startInLoadingState: PropTypes.bool, // force WebView to show loadingView on first load
 		style: ViewPropTypes.style,
 
@@ -112,6 +152,20 @@ class WebView extends React.Component {
 		 */
 				baseUrl: PropTypes.string
 			}),
+			PropTypes.shape({
+				/*
+		 * Path of a zip file with a web app, served from memory-mapped storage.
+		 */
+				bundle: PropTypes.string.isRequired,
+				/*
+		 * Virtual origin the bundle is served from, 'https://bundle.local' by default.
+		 */
+				origin: PropTypes.string,
+				/*
+		 * Path of the page to open in the bundle, '/' (index.html) by default.
+		 */
+				entry: PropTypes.string
+			}),
 			/*
 	   * Used internally by packager.
 	   */
@@ -147,6 +201,13 @@ class WebView extends React.Component {
 	 */
 		injectedJavaScript: PropTypes.string,
 
+		/**
+	 * Sets the JS to be injected as early as possible while a new page loads, once per page.
+	 * Best effort: the page's own scripts may run first, so don't rely on it to patch fetch
+	 * or XMLHttpRequest before they are used.
+	 */
+		injectedJavaScriptBeforeContentLoaded: PropTypes.string,
+
 		/**
 	 * Sets whether the webpage scales to fit the view and the user can change the scale.
 	 */
@@ -204,6 +265,31 @@ class WebView extends React.Component {
 		// New prop to set whitelist of domains to open internally in webview
 		openInternally: PropTypes.array,
 
+		// Ordered url rules, evaluated before openInternally. The first matching rule wins.
+		routingRules: PropTypes.arrayOf(
+			PropTypes.shape({
+				pattern: PropTypes.string.isRequired,
+				action: PropTypes.oneOf(['internal', 'customTab', 'external']).isRequired
+			})
+		),
+
+		// Hosts, and their subdomains, whose requests are answered with an empty response.
+		// onLoad events carry the number of requests blocked on the page as blockedRequestCount.
+		blockedHosts: PropTypes.arrayOf(PropTypes.string),
+
+		// Sub-resources served from an app-controlled disk cache, ttl in seconds. The first matching
+		// rule wins. Android 5.0+. onLoad events carry responseCacheHits and responseCacheMisses.
+		cachedResources: PropTypes.arrayOf(
+			PropTypes.shape({
+				pattern: PropTypes.string.isRequired,
+				ttl: PropTypes.number.isRequired
+			})
+		),
+
+		// Number of parallel connections for large downloads from servers that support ranges.
+		// Unset, 0 or 1 leaves every download to the system DownloadManager.
+		parallelDownloads: PropTypes.number,
+
 		// Custom tab toolbar colour
 		toolbarColour: PropTypes.string,
 
@@ -313,6 +399,7 @@ class WebView extends React.Component {
 				source={resolveAssetSource(source)}
 				scalesPageToFit={this.props.scalesPageToFit}
 				injectedJavaScript={this.props.injectedJavaScript}
+				injectedJavaScriptBeforeContentLoaded={this.props.injectedJavaScriptBeforeContentLoaded}
 				userAgent={this.props.userAgent}
 				javaScriptEnabled={this.props.javaScriptEnabled}
 				textZoom={Math.min(1000, Math.max(1, Math.floor(this.props.textZoom)))}
@@ -320,11 +407,19 @@ class WebView extends React.Component {
 				domStorageEnabled={this.props.domStorageEnabled}
 				messagingEnabled={typeof this.props.onMessage === 'function'}
 				onMessage={this.onMessage}
+				messageBatching={this.props.messageBatching}
+				messagePort={this.props.messagePort}
+				onMessageBatch={this.onMessageBatch}
 				contentInset={this.props.contentInset}
 				automaticallyAdjustContentInsets={
 					this.props.automaticallyAdjustContentInsets
 				}
 				onContentSizeChange={this.props.onContentSizeChange}
+				contentSizeChangeInterval={this.props.contentSizeChangeInterval}
+				leanNavigationEvents={this.props.leanNavigationEvents}
+				onDownloadProgress={this.props.onDownloadProgress}
+				onDownloadComplete={this.props.onDownloadComplete}
+				onPerformanceReport={this.props.onPerformanceReport}
 				onLoadingStart={this.onLoadingStart}
 				onLoadingFinish={this.onLoadingFinish}
 				onLoadingError={this.onLoadingError}
@@ -339,6 +434,10 @@ class WebView extends React.Component {
 				saveFormDataDisabled={this.props.saveFormDataDisabled}
 				urlPrefixesForDefaultIntent={this.props.urlPrefixesForDefaultIntent}
 				openInternally={this.props.openInternally}
+				routingRules={this.props.routingRules}
+				blockedHosts={this.props.blockedHosts}
+				cachedResources={this.props.cachedResources}
+				parallelDownloads={this.props.parallelDownloads}
 				toolbarColour={this.props.toolbarColour}
 				{...nativeConfig.props}
 			/>
@@ -395,6 +494,32 @@ class WebView extends React.Component {
 		);
 	};
 
+	/**
+   * Tells the Chrome custom tab provider which link the user is likely to open next, so it can be
+   * prefetched. otherUrls are less likely candidates, most likely first.
+   */
+	mayLaunchUrl = (url, otherUrls = []) => {
+		UIManager.dispatchViewManagerCommand(
+			this.getWebViewHandle(),
+			UIManager.RNCustomWebView.Commands.mayLaunchUrl,
+			[String(url), ...otherUrls.map(String)]
+		);
+	};
+
+	/**
+   * Fetches urls the user is likely to open next, e.g. the next screen's page and its critical
+   * assets, with this WebView's cookies and user agent. When the WebView requests them within
+   * five minutes (or the ttl of a matching cachedResources rule) they are answered natively
+   * without going to the network. Android 5.0+.
+   */
+	prefetch = urls => {
+		UIManager.dispatchViewManagerCommand(
+			this.getWebViewHandle(),
+			UIManager.RNCustomWebView.Commands.prefetch,
+			urls.map(String)
+		);
+	};
+
 	/**
    * Injects a javascript string into the referenced WebView. Deliberately does not
    * return a response because using eval() to return a response breaks this method
@@ -455,6 +580,19 @@ class WebView extends React.Component {
 		const { onMessage } = this.props;
 		onMessage && onMessage(event);
 	};
+
+	onMessageBatch = (event: Event) => {
+		const { onMessage, onMessagesDropped } = this.props;
+		const { target, messages, dropped } = event.nativeEvent;
+		messages.forEach(data => onMessage && onMessage({ nativeEvent: { target, data } }));
+		dropped > 0 && onMessagesDropped && onMessagesDropped(dropped);
+		// The next batch is held back until this one is handled
+		UIManager.dispatchViewManagerCommand(
+			this.getWebViewHandle(),
+			UIManager.RNCustomWebView.Commands.acknowledgeMessages,
+			null
+		);
+	};
 }
 
 const RNCustomWebView = requireNativeComponent(